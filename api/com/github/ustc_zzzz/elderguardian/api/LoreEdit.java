@@ -0,0 +1,72 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+
+/**
+ * An edit of a lore, which replaces a run of successive lines with other lines. Appending, inserting and
+ * removing lines are all special cases of the edit.
+ *
+ * @author ustc_zzzz
+ * @see LoreMatcher#rematchSerialized(List, LoreMatcherContext, LoreMatchPresets, List, LoreEdit)
+ */
+@NonnullByDefault
+public final class LoreEdit
+{
+    public static LoreEdit appended(int previousSize, int insertedCount)
+    {
+        return new LoreEdit(previousSize, 0, insertedCount);
+    }
+
+    public static LoreEdit inserted(int offset, int insertedCount)
+    {
+        return new LoreEdit(offset, 0, insertedCount);
+    }
+
+    public static LoreEdit removed(int offset, int removedCount)
+    {
+        return new LoreEdit(offset, removedCount, 0);
+    }
+
+    public static LoreEdit replaced(int offset, int removedCount, int insertedCount)
+    {
+        return new LoreEdit(offset, removedCount, insertedCount);
+    }
+
+    private final int offset;
+    private final int removedCount;
+    private final int insertedCount;
+
+    private LoreEdit(int offset, int removedCount, int insertedCount)
+    {
+        if (offset < 0 || removedCount < 0 || insertedCount < 0)
+        {
+            throw new IllegalArgumentException("The offset and the counts of lines should not be negative");
+        }
+        this.offset = offset;
+        this.removedCount = removedCount;
+        this.insertedCount = insertedCount;
+    }
+
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    public int getRemovedCount()
+    {
+        return this.removedCount;
+    }
+
+    public int getInsertedCount()
+    {
+        return this.insertedCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoreEdit{offset=" + this.offset + ", removed=" + this.removedCount + ", inserted=" + this.insertedCount + "}";
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Doubles;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The immutable presets of a stat compiled from a data view, which are shared by all the results matched with
+ * them instead of being copied for each result.
+ * <p>
+ * Presets compiled by {@link #compile(DataView)} are meant to be kept, and matchers compare them by identity to
+ * reuse what has been prepared for them. Presets created by {@link #of(DataView)} for a single call are compared
+ * by values instead, which costs a deep comparison each time.
+ * </p>
+ *
+ * @author ustc_zzzz
+ * @see LoreMatchResult
+ */
+@NonnullByDefault
+public final class LoreMatchPresets
+{
+    public static final LoreMatchPresets EMPTY = new LoreMatchPresets(ImmutableMap.of(), true);
+
+    public static LoreMatchPresets of(DataView presets)
+    {
+        return new LoreMatchPresets(valuesOf(presets), false);
+    }
+
+    public static LoreMatchPresets compile(DataView presets)
+    {
+        return new LoreMatchPresets(valuesOf(presets), true);
+    }
+
+    private static Map<String, Object> valuesOf(DataView presets)
+    {
+        ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+        for (Map.Entry<DataQuery, Object> e : presets.getValues(true).entrySet())
+        {
+            Object value = e.getValue();
+            if (!(value instanceof DataView)) builder.put(e.getKey().asString('.'), value);
+        }
+        return builder.build();
+    }
+
+    private final boolean compiled; // compared by identity if true
+    private final Map<String, Object> values;
+    private final List<String> keys;
+    private final Object[] valueArray;
+    private final double[] numbers; // NaN if not a number
+
+    private LoreMatchPresets(Map<String, Object> values, boolean compiled)
+    {
+        this.compiled = compiled;
+        this.values = values;
+        this.keys = ImmutableList.copyOf(values.keySet());
+        this.valueArray = values.values().toArray();
+        this.numbers = new double[this.valueArray.length];
+        for (int i = 0; i < this.numbers.length; ++i) this.numbers[i] = numberOf(this.valueArray[i]);
+    }
+
+    static double numberOf(Object value)
+    {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        Double number = value instanceof String ? Doubles.tryParse((String) value) : null;
+        return Objects.isNull(number) ? Double.NaN : number;
+    }
+
+    boolean isCompiled()
+    {
+        return this.compiled;
+    }
+
+    List<String> getKeys()
+    {
+        return this.keys;
+    }
+
+    Object getValue(int index)
+    {
+        return this.valueArray[index];
+    }
+
+    double getNumber(int index)
+    {
+        return this.numbers[index];
+    }
+
+    public Map<String, Object> getValues()
+    {
+        return this.values;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.values.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof LoreMatchPresets)) return false;
+        return this.values.equals(((LoreMatchPresets) obj).values);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoreMatchPresets" + this.values;
+    }
+}
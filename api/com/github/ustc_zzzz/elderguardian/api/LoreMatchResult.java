@@ -0,0 +1,295 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.spongepowered.api.data.*;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The result of a lore matched by a {@link LoreMatcher}, which consists of the presets and the args.
+ * <p>
+ * A result only holds the values of args, and is layered over the {@link LoreMatchPresets} shared by all the
+ * results of the same matcher. Values of int and double args are converted only once when the result is created,
+ * and could be read through a {@link LoreStatAccessor} without any parsing, while values of string args are only
+ * converted if they are read as numbers. The result could also be viewed as a data container by
+ * {@link #toContainer()}.
+ * </p>
+ *
+ * @author ustc_zzzz
+ * @see LoreStatAccessor
+ */
+@NonnullByDefault
+public final class LoreMatchResult implements DataSerializable
+{
+    private static final Interner<ImmutableMap<String, Integer>> SCHEMAS = Interners.newWeakInterner();
+
+    public static LoreMatchResult fromContainer(DataView data)
+    {
+        Layout layout = new Layout(null, LoreMatchPresets.of(data), Collections.emptyList());
+        return new LoreMatchResult(layout, 0, new String[layout.size], new double[layout.size]);
+    }
+
+    /**
+     * View the results as data containers, which are built lazily when each of them is read for the first time,
+     * so results which are never read as containers cost nothing.
+     *
+     * @param results the results
+     * @return an immutable list of the containers, in the same order as the results
+     */
+    public static List<DataContainer> toContainers(List<LoreMatchResult> results)
+    {
+        return results.isEmpty() ? Collections.emptyList() : new LazyContainers(results);
+    }
+
+    private final Layout layout;
+    private final int offset;
+    private final String[] args; // null if the preset is used
+    private final double[] numbers; // NaN if not a number or not converted
+
+    private LoreMatchResult(Layout layout, int offset, String[] args, double[] numbers)
+    {
+        this.layout = layout;
+        this.offset = offset;
+        this.args = args;
+        this.numbers = numbers;
+    }
+
+    // the args are shared since they are never modified
+    LoreMatchResult withOffset(int offset)
+    {
+        return offset == this.offset ? this : new LoreMatchResult(this.layout, offset, this.args, this.numbers);
+    }
+
+    Layout getLayout()
+    {
+        return this.layout;
+    }
+
+    /**
+     * Get the index of the first lore line matched by the matcher.
+     *
+     * @return the offset of the lore lines
+     */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    @Nullable
+    private Object valueAt(int index)
+    {
+        if (Objects.nonNull(this.args[index])) return this.args[index];
+        return index < this.layout.presetSize ? this.layout.presets.getValue(index) : null;
+    }
+
+    private double numberAt(int index)
+    {
+        String arg = this.args[index];
+        if (Objects.nonNull(arg))
+        {
+            // numeric args are always converted, so only string args are converted here
+            double number = this.numbers[index];
+            return Double.isNaN(number) ? LoreMatchPresets.numberOf(arg) : number;
+        }
+        return index < this.layout.presetSize ? this.layout.presets.getNumber(index) : Double.NaN;
+    }
+
+    public Set<String> getKeys()
+    {
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (Map.Entry<String, Integer> entry : this.layout.schema.entrySet())
+        {
+            if (Objects.nonNull(this.valueAt(entry.getValue()))) builder.add(entry.getKey());
+        }
+        return builder.build();
+    }
+
+    public boolean contains(LoreStatAccessor accessor)
+    {
+        int index = accessor.indexIn(this.layout.schema);
+        return index >= 0 && Objects.nonNull(this.valueAt(index));
+    }
+
+    public Optional<String> getString(LoreStatAccessor accessor)
+    {
+        int index = accessor.indexIn(this.layout.schema);
+        return index < 0 ? Optional.empty() : Optional.ofNullable(this.valueAt(index)).map(Object::toString);
+    }
+
+    public String getString(LoreStatAccessor accessor, String defaultValue)
+    {
+        return this.getString(accessor).orElse(defaultValue);
+    }
+
+    public double getDouble(LoreStatAccessor accessor, double defaultValue)
+    {
+        int index = accessor.indexIn(this.layout.schema);
+        double number = index < 0 ? Double.NaN : this.numberAt(index);
+        return Double.isNaN(number) ? defaultValue : number;
+    }
+
+    public int getInt(LoreStatAccessor accessor, int defaultValue)
+    {
+        int index = accessor.indexIn(this.layout.schema);
+        double number = index < 0 ? Double.NaN : this.numberAt(index);
+        return Double.isNaN(number) ? defaultValue : (int) number;
+    }
+
+    @Override
+    public DataContainer toContainer()
+    {
+        DataContainer container = new MemoryDataContainer();
+        for (Map.Entry<String, Integer> entry : this.layout.schema.entrySet())
+        {
+            Object value = this.valueAt(entry.getValue());
+            if (Objects.nonNull(value)) container.set(DataQuery.of('.', entry.getKey()), value);
+        }
+        return container;
+    }
+
+    @Override
+    public int getContentVersion()
+    {
+        return 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : this.getKeys()) values.put(key, this.valueAt(this.layout.schema.get(key)));
+        return "LoreMatchResult{" + Joiner.on(", ").withKeyValueSeparator("=").join(values) + "}";
+    }
+
+    private static final class LazyContainers extends AbstractList<DataContainer> implements RandomAccess
+    {
+        private final List<LoreMatchResult> results;
+        private final AtomicReferenceArray<DataContainer> containers; // null if not built yet
+
+        private LazyContainers(List<LoreMatchResult> results)
+        {
+            this.results = results;
+            this.containers = new AtomicReferenceArray<>(results.size());
+        }
+
+        @Override
+        public DataContainer get(int index)
+        {
+            DataContainer container = this.containers.get(index);
+            if (Objects.nonNull(container)) return container;
+            // the first built container wins, so that the same container is returned for the same index
+            this.containers.compareAndSet(index, null, this.results.get(index).toContainer());
+            return this.containers.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.results.size();
+        }
+    }
+
+    /**
+     * The slots of presets and args compiled for a matcher, where preset slots come first.
+     */
+    static final class Layout
+    {
+        @Nullable
+        private final LoreMatcher matcher;
+        private final LoreMatchPresets presets;
+        private final Map<String, Integer> schema; // key -> slot, shared by layouts with the same keys
+        private final int[][] argSlots; // template -> arg -> slot, or -1 if overridden by a former arg
+        private final boolean[][] numericArgs; // template -> arg -> whether it is an int or a double
+        private final int[] boundsOffsets; // template -> offset in bounds
+        private final int presetSize;
+        private final int boundsSize;
+        private final int size;
+
+        Layout(@Nullable LoreMatcher matcher, LoreMatchPresets presets, List<LoreTemplate> templates)
+        {
+            Map<String, Integer> schema = new LinkedHashMap<>();
+            for (String key : presets.getKeys()) schema.put(key, schema.size());
+
+            int boundsSize = 0;
+            this.argSlots = new int[templates.size()][];
+            this.numericArgs = new boolean[templates.size()][];
+            this.boundsOffsets = new int[templates.size()];
+            for (int i = 0; i < this.argSlots.length; ++i)
+            {
+                LoreTemplate template = templates.get(i);
+                int argCount = template.getTemplateArgs().size();
+                this.argSlots[i] = new int[argCount];
+                this.numericArgs[i] = new boolean[argCount];
+                this.boundsOffsets[i] = boundsSize;
+                for (int j = 0; j < argCount; ++j)
+                {
+                    String name = template.getArgName(j);
+                    if (!schema.containsKey(name)) schema.put(name, schema.size());
+                    this.argSlots[i][j] = template.isDuplicateArg(j) ? -1 : schema.get(name);
+                    this.numericArgs[i][j] = template.isNumericArg(j);
+                }
+                boundsSize += argCount * 2;
+            }
+
+            this.matcher = matcher;
+            this.presets = presets;
+            this.presetSize = presets.getKeys().size();
+            this.schema = SCHEMAS.intern(ImmutableMap.copyOf(schema));
+            this.boundsSize = boundsSize;
+            this.size = schema.size();
+        }
+
+        @Nullable
+        LoreMatcher getMatcher()
+        {
+            return this.matcher;
+        }
+
+        LoreMatchPresets getPresets()
+        {
+            return this.presets;
+        }
+
+        int getBoundsSize()
+        {
+            return this.boundsSize;
+        }
+
+        int getBoundsOffset(int indexOfTemplate)
+        {
+            return this.boundsOffsets[indexOfTemplate];
+        }
+
+        // the latter template overrides the former one, while empty args never override anything
+        // only int and double args are converted, which are always numbers since they have been matched as numbers
+        LoreMatchResult createResult(List<String> lores, int offset, int[] bounds)
+        {
+            String[] args = new String[this.size];
+            double[] numbers = new double[this.size];
+            Arrays.fill(numbers, Double.NaN);
+            for (int i = 0; i < this.argSlots.length; ++i)
+            {
+                String lore = lores.get(offset + i);
+                int[] slots = this.argSlots[i];
+                boolean[] numeric = this.numericArgs[i];
+                for (int j = 0, k = this.boundsOffsets[i]; j < slots.length; ++j, k += 2)
+                {
+                    int slot = slots[j];
+                    if (slot >= 0 && bounds[k] < bounds[k + 1])
+                    {
+                        String arg = args[slot] = lore.substring(bounds[k], bounds[k + 1]);
+                        numbers[slot] = numeric[j] ? LoreMatchPresets.numberOf(arg) : Double.NaN;
+                    }
+                }
+            }
+            return new LoreMatchResult(this, offset, args, numbers);
+        }
+    }
+}
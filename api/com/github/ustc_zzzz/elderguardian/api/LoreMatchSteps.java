@@ -0,0 +1,78 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+
+/**
+ * A counter of the steps taken by matching, which aborts matching once the maximum is exhausted.
+ * <p>
+ * A step is a character of a lore line visited for a part of a template. Steps are taken before the work is done,
+ * so a line which would exceed the maximum is never matched. A counter could be shared by many matchers, for
+ * example by all the matchers of a stat, and it is not thread-safe.
+ * </p>
+ *
+ * @author ustc_zzzz
+ * @see LoreMatcher#matchSerialized(List, LoreMatcherContext, LoreMatchPresets, LoreMatchSteps)
+ */
+@NonnullByDefault
+public final class LoreMatchSteps
+{
+    public static LoreMatchSteps unlimited()
+    {
+        return new LoreMatchSteps(Long.MAX_VALUE);
+    }
+
+    public static LoreMatchSteps of(long maximum)
+    {
+        if (maximum < 0) throw new IllegalArgumentException("The maximum of steps should not be negative");
+        return new LoreMatchSteps(maximum);
+    }
+
+    private final long maximum;
+    private long taken;
+    private boolean exhausted;
+
+    private LoreMatchSteps(long maximum)
+    {
+        this.maximum = maximum;
+    }
+
+    // take the steps if they are available, otherwise mark the counter exhausted
+    boolean take(long steps)
+    {
+        if (!this.exhausted && steps <= this.maximum - this.taken)
+        {
+            this.taken += steps;
+            return true;
+        }
+        this.exhausted = true;
+        return false;
+    }
+
+    public long getMaximum()
+    {
+        return this.maximum;
+    }
+
+    public long getTaken()
+    {
+        return this.taken;
+    }
+
+    /**
+     * Check whether matching has been aborted, in which case the results are incomplete and should be dropped.
+     *
+     * @return true if the maximum is exhausted
+     */
+    public boolean isExhausted()
+    {
+        return this.exhausted;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoreMatchSteps{taken=" + this.taken + ", maximum=" + this.maximum + ", exhausted=" + this.exhausted + "}";
+    }
+}
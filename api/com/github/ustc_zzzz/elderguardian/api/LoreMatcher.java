@@ -4,11 +4,20 @@ import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.data.*;
 import org.spongepowered.api.data.persistence.InvalidDataException;
 import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
+ * A matcher consisting of templates of successive lore lines.
+ * <p>
+ * By default lore lines are rendered by {@link TextSerializers#FORMATTING_CODE}. In plain text mode they are
+ * rendered by {@link Text#toPlain()} instead, and formatting codes in templates are stripped before matching, so
+ * args capturing formatting codes (for example the leading {{color}}) always capture an empty string.
+ * </p>
+ *
  * @author ustc_zzzz
  */
 @NonnullByDefault
@@ -17,6 +26,7 @@ public final class LoreMatcher implements DataSerializable
     public static final DataQuery OPEN_ARG = DataQuery.of("OpenArg");
     public static final DataQuery CLOSE_ARG = DataQuery.of("CloseArg");
     public static final DataQuery TEMPLATES = DataQuery.of("Templates");
+    public static final DataQuery PLAIN_TEXT = DataQuery.of("PlainText");
 
     public static final String DEFAULT_OPEN_ARG = "{{";
     public static final String DEFAULT_CLOSE_ARG = "}}";
@@ -27,67 +37,273 @@ public final class LoreMatcher implements DataSerializable
         String closeArg = data.getString(CLOSE_ARG).orElse(DEFAULT_CLOSE_ARG);
         List<String> templates = data.getStringList(TEMPLATES).orElse(ImmutableList.of());
         if (templates.isEmpty()) throw new InvalidDataException("The templates should not be empty");
+        boolean plainText = data.getBoolean(PLAIN_TEXT).orElse(false);
 
-        return new LoreMatcher(openArg, closeArg, templates);
+        return new LoreMatcher(openArg, closeArg, templates, plainText);
     }
 
     private final String openArg;
     private final String closeArg;
+    private final boolean plainText;
     private final List<String> rawTemplates;
     private final List<LoreTemplate> loreTemplates;
+    private final List<LoreTemplate> matchingTemplates; // formatting codes are stripped in plain text mode
 
     private final int loreTemplateSize;
+    private final int anchorIndex; // the most selective template, whose lines are scanned first
 
-    private LoreMatcher(String openArg, String closeArg, Collection<String> templates)
+    @Nullable
+    private volatile LoreMatchResult.Layout lastLayout; // compiled for the presets used last time
+
+    private LoreMatcher(String openArg, String closeArg, Collection<String> templates, boolean plainText)
     {
         this.openArg = Objects.requireNonNull(openArg);
         this.closeArg = Objects.requireNonNull(closeArg);
+        this.plainText = plainText;
 
         ImmutableList.Builder<String> rawTemplatesBuilder = ImmutableList.builder();
         ImmutableList.Builder<LoreTemplate> loreTemplatesBuilder = ImmutableList.builder();
+        ImmutableList.Builder<LoreTemplate> matchingTemplatesBuilder = ImmutableList.builder();
 
         for (String template : Objects.requireNonNull(templates))
         {
+            LoreTemplate loreTemplate = LoreTemplate.of(template, openArg, closeArg);
+            String strippedTemplate = plainText ? TextSerializers.FORMATTING_CODE.stripCodes(template) : template;
             rawTemplatesBuilder.add(template);
-            loreTemplatesBuilder.add(LoreTemplate.of(template, openArg, closeArg));
+            loreTemplatesBuilder.add(loreTemplate);
+            matchingTemplatesBuilder.add(plainText ? LoreTemplate.of(strippedTemplate, openArg, closeArg) : loreTemplate);
         }
 
         this.rawTemplates = rawTemplatesBuilder.build();
         this.loreTemplates = loreTemplatesBuilder.build();
+        this.matchingTemplates = matchingTemplatesBuilder.build();
 
         this.loreTemplateSize = this.loreTemplates.size();
         if (this.loreTemplateSize == 0) throw new IllegalArgumentException("The templates should not be empty");
+
+        int anchorIndex = 0;
+        for (int i = 1; i < this.loreTemplateSize; ++i)
+        {
+            if (this.matchingTemplates.get(i).isMoreSelectiveThan(this.matchingTemplates.get(anchorIndex))) anchorIndex = i;
+        }
+        this.anchorIndex = anchorIndex;
     }
 
-    private Optional<DataContainer> matchWithOffset(List<Text> lores, int offset, DataContainer presets)
+    // the anchor has matched its line, whose bounds have been written, so only the other templates are verified
+    @Nullable
+    private LoreMatchResult matchWithOffset(List<String> lores, int offset, LoreMatchResult.Layout layout, int[] bounds,
+                                            int anchorIndex, LoreMatchSteps steps)
     {
-        DataContainer container = presets.copy();
-        for (LoreTemplate template : this.loreTemplates)
+        for (int i = 0; i < this.loreTemplateSize; ++i)
         {
-            Optional<DataContainer> containerOptional = template.translate(lores.get(offset++));
+            LoreTemplate template = this.matchingTemplates.get(i);
+            if (i == anchorIndex) continue;
+            if (!template.matchBounds(lores.get(offset + i), bounds, layout.getBoundsOffset(i), steps)) return null;
+        }
+        return layout.createResult(lores, offset, bounds);
+    }
 
-            if (!containerOptional.isPresent()) return Optional.empty();
-            Map<DataQuery, Object> values = containerOptional.get().getValues(true);
-            for (Map.Entry<DataQuery, Object> e : values.entrySet())
-            {
-                Object value = e.getValue();
-                if (!value.toString().isEmpty()) container.set(e.getKey(), value);
-            }
+    private LoreMatchResult.Layout layoutOf(LoreMatchPresets presets)
+    {
+        // compiled presets are compared by identity, and only presets created for a single call by values
+        LoreMatchResult.Layout layout = this.lastLayout;
+        if (Objects.isNull(layout) || !isSamePresets(layout.getPresets(), presets))
+        {
+            this.lastLayout = layout = new LoreMatchResult.Layout(this, presets, this.matchingTemplates);
         }
-        return Optional.of(container);
+        return layout;
+    }
+
+    private static boolean isSamePresets(LoreMatchPresets last, LoreMatchPresets presets)
+    {
+        return last == presets || !presets.isCompiled() && last.equals(presets);
     }
 
     public List<DataContainer> match(List<Text> lores, LoreMatcherContext context, DataContainer presets)
+    {
+        List<LoreMatchResult> results = this.matchResults(lores, context, presets);
+        return LoreMatchResult.toContainers(results);
+    }
+
+    /**
+     * Match the lore, and convert the values only once so that they could be read without parsing.
+     *
+     * @param lores   the lore
+     * @param context the context providing the lore
+     * @param presets the presets which are overridden by the values of args
+     * @return the results of all the offsets matching the lore
+     */
+    public List<LoreMatchResult> matchResults(List<Text> lores, LoreMatcherContext context, DataView presets)
+    {
+        List<String> serializedLores = new ArrayList<>(lores.size());
+        for (Text lore : lores) serializedLores.add(this.render(lore));
+        return this.matchSerialized(serializedLores, context, presets);
+    }
+
+    /**
+     * Render a lore line in the way this matcher expects.
+     *
+     * @param lore the lore line
+     * @return the plain text in plain text mode, otherwise the text serialized by formatting codes
+     */
+    public String render(Text lore)
+    {
+        return this.plainText ? lore.toPlain() : TextSerializers.FORMATTING_CODE.serialize(lore);
+    }
+
+    /**
+     * Fetch the lore of a context rendered in the way this matcher expects, which is cached by the context.
+     *
+     * @param context the context providing the lore
+     * @return the rendered lore
+     */
+    public List<String> getRenderedLore(LoreMatcherContext context)
+    {
+        return this.plainText ? context.getPlainHeldItemLore() : context.getSerializedHeldItemLore();
+    }
+
+    /**
+     * Match the lore already rendered by {@link #render(Text)}, so that the lore could be rendered only once and
+     * shared by all the matchers.
+     *
+     * @param lores   the rendered lore
+     * @param context the context providing the lore
+     * @param presets the presets which are overridden by the values of args
+     * @return the results of all the offsets matching the lore
+     * @see #getRenderedLore(LoreMatcherContext)
+     */
+    public List<LoreMatchResult> matchSerialized(List<String> lores, LoreMatcherContext context, DataView presets)
+    {
+        return this.matchSerialized(lores, context, LoreMatchPresets.of(presets));
+    }
+
+    /**
+     * Match the lore already rendered with the compiled presets, which are shared by all the results.
+     *
+     * @param lores   the rendered lore
+     * @param context the context providing the lore
+     * @param presets the compiled presets which are overridden by the values of args
+     * @return the results of all the offsets matching the lore
+     */
+    public List<LoreMatchResult> matchSerialized(List<String> lores, LoreMatcherContext context, LoreMatchPresets presets)
+    {
+        return this.matchSerialized(lores, context, presets, LoreMatchSteps.unlimited());
+    }
+
+    /**
+     * Match the lore already rendered with the compiled presets, which is aborted once the steps are exhausted.
+     *
+     * @param lores   the rendered lore
+     * @param context the context providing the lore
+     * @param presets the compiled presets which are overridden by the values of args
+     * @param steps   the counter of steps, which may be shared with other matchers
+     * @return the results of all the offsets matching the lore, which are incomplete if the steps are exhausted
+     */
+    public List<LoreMatchResult> matchSerialized(List<String> lores, LoreMatcherContext context, LoreMatchPresets presets,
+                                                 LoreMatchSteps steps)
     {
         int loreSize = lores.size();
         int maxOffsetAvailable = loreSize - this.loreTemplateSize;
+        if (maxOffsetAvailable < 0) return ImmutableList.of();
+
+        LoreMatchResult.Layout layout = this.layoutOf(presets);
+        ImmutableList.Builder<LoreMatchResult> builder = ImmutableList.builder();
+        this.matchOffsets(lores, 0, maxOffsetAvailable, layout, builder, this.anchorIndex, steps);
+        return builder.build();
+    }
 
-        ImmutableList.Builder<DataContainer> builder = ImmutableList.builder();
-        for (int i = 0; i <= maxOffsetAvailable; ++i) this.matchWithOffset(lores, i, presets).ifPresent(builder::add);
+    // match the lore by the full scan, where every window is verified in the order of the templates, for comparison
+    List<LoreMatchResult> matchSerializedWithoutAnchor(List<String> lores, LoreMatchPresets presets)
+    {
+        int maxOffsetAvailable = lores.size() - this.loreTemplateSize;
+        if (maxOffsetAvailable < 0) return ImmutableList.of();
 
+        LoreMatchResult.Layout layout = this.layoutOf(presets);
+        LoreMatchSteps steps = LoreMatchSteps.unlimited();
+        int[] bounds = new int[layout.getBoundsSize()];
+        ImmutableList.Builder<LoreMatchResult> builder = ImmutableList.builder();
+        for (int offset = 0; offset <= maxOffsetAvailable; ++offset)
+        {
+            LoreTemplate first = this.matchingTemplates.get(0);
+            if (!first.matchBounds(lores.get(offset), bounds, layout.getBoundsOffset(0), steps)) continue;
+            LoreMatchResult result = this.matchWithOffset(lores, offset, layout, bounds, 0, steps);
+            if (Objects.nonNull(result)) builder.add(result);
+        }
         return builder.build();
     }
 
+    /**
+     * Match the lore after an edit, where only the offsets whose lines overlap the edited lines are matched again.
+     * Previous results of other offsets are reused, and previous results of other matchers are ignored.
+     *
+     * @param lores    the rendered lore after the edit
+     * @param context  the context providing the lore
+     * @param presets  the compiled presets which are overridden by the values of args
+     * @param previous all the results of this matcher for the lore before the edit
+     * @param edit     the edit
+     * @return the results of all the offsets matching the lore, which are the same as matching it from scratch
+     */
+    public List<LoreMatchResult> rematchSerialized(List<String> lores, LoreMatcherContext context, LoreMatchPresets presets,
+                                                   List<LoreMatchResult> previous, LoreEdit edit)
+    {
+        int editOffset = edit.getOffset(), editEnd = editOffset + edit.getInsertedCount();
+        if (editEnd > lores.size()) throw new IllegalArgumentException("The edit is out of the bounds of the lore");
+
+        LoreMatchResult.Layout layout = this.layoutOf(presets);
+        List<LoreMatchResult> shiftedResults = new ArrayList<>();
+        ImmutableList.Builder<LoreMatchResult> builder = ImmutableList.builder();
+        for (LoreMatchResult result : previous)
+        {
+            LoreMatchResult.Layout previousLayout = result.getLayout();
+            if (previousLayout.getMatcher() != this) continue;
+            // results matched with other presets could not be reused
+            if (previousLayout != layout) return this.matchSerialized(lores, context, presets);
+            int offset = result.getOffset();
+            if (offset + this.loreTemplateSize <= editOffset) builder.add(result);
+            else if (offset >= editOffset + edit.getRemovedCount())
+            {
+                shiftedResults.add(result.withOffset(offset + edit.getInsertedCount() - edit.getRemovedCount()));
+            }
+        }
+
+        int maxOffsetAvailable = Math.min(lores.size() - this.loreTemplateSize, editEnd - 1);
+        int minOffsetAvailable = Math.max(0, editOffset - this.loreTemplateSize + 1);
+        this.matchOffsets(lores, minOffsetAvailable, maxOffsetAvailable, layout, builder, this.anchorIndex,
+                LoreMatchSteps.unlimited());
+        return builder.addAll(shiftedResults).build();
+    }
+
+    // the lines are scanned once by the anchor, and only the windows around the lines it matches are verified
+    // nothing is allocated if the anchor matches no line
+    private void matchOffsets(List<String> lores, int minOffset, int maxOffset, LoreMatchResult.Layout layout,
+                              ImmutableList.Builder<LoreMatchResult> builder, int anchorIndex, LoreMatchSteps steps)
+    {
+        LoreTemplate anchor = this.matchingTemplates.get(anchorIndex);
+        int anchorBoundsOffset = layout.getBoundsOffset(anchorIndex), anchorBoundsSize = anchor.getArgCount() * 2;
+        int[] bounds = new int[layout.getBoundsSize()];
+
+        int hitCount = 0;
+        int[] hitOffsets = null, hitBounds = null; // the bounds written by the anchor for each offset
+        for (int i = minOffset; i <= maxOffset && !steps.isExhausted(); ++i)
+        {
+            if (!anchor.matchBounds(lores.get(i + anchorIndex), bounds, anchorBoundsOffset, steps)) continue;
+            if (Objects.isNull(hitOffsets))
+            {
+                hitOffsets = new int[maxOffset - i + 1];
+                hitBounds = new int[hitOffsets.length * anchorBoundsSize];
+            }
+            System.arraycopy(bounds, anchorBoundsOffset, hitBounds, hitCount * anchorBoundsSize, anchorBoundsSize);
+            hitOffsets[hitCount++] = i;
+        }
+
+        for (int i = 0; i < hitCount && !steps.isExhausted(); ++i)
+        {
+            System.arraycopy(hitBounds, i * anchorBoundsSize, bounds, anchorBoundsOffset, anchorBoundsSize);
+            LoreMatchResult result = this.matchWithOffset(lores, hitOffsets[i], layout, bounds, anchorIndex, steps);
+            if (Objects.nonNull(result)) builder.add(result);
+        }
+    }
+
     public String getOpenArg()
     {
         return this.openArg;
@@ -98,6 +314,11 @@ public final class LoreMatcher implements DataSerializable
         return this.closeArg;
     }
 
+    public boolean isPlainText()
+    {
+        return this.plainText;
+    }
+
     public List<String> getTemplates()
     {
         return this.rawTemplates;
@@ -108,11 +329,26 @@ public final class LoreMatcher implements DataSerializable
         return this.loreTemplates;
     }
 
+    public long getPrefilterCheckCount()
+    {
+        long count = 0;
+        for (LoreTemplate template : this.matchingTemplates) count += template.getPrefilterCheckCount();
+        return count;
+    }
+
+    public long getPrefilterRejectionCount()
+    {
+        long count = 0;
+        for (LoreTemplate template : this.matchingTemplates) count += template.getPrefilterRejectionCount();
+        return count;
+    }
+
     @Override
     public DataContainer toContainer()
     {
         MemoryDataContainer container = new MemoryDataContainer();
-        return container.set(OPEN_ARG, this.openArg).set(CLOSE_ARG, this.closeArg).set(TEMPLATES, this.rawTemplates);
+        container.set(OPEN_ARG, this.openArg).set(CLOSE_ARG, this.closeArg).set(TEMPLATES, this.rawTemplates);
+        return this.plainText ? container.set(PLAIN_TEXT, true) : container;
     }
 
     @Override
@@ -3,6 +3,8 @@ package com.github.ustc_zzzz.elderguardian.api;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
+import org.spongepowered.api.util.GuavaCollectors;
 
 import java.util.List;
 import java.util.Optional;
@@ -30,4 +32,26 @@ public interface LoreMatcherContext
     Optional<Player> getPlayer();
 
     List<Text> getHeldItemLore();
+
+    /**
+     * Fetch the held item lore serialized by {@link TextSerializers#FORMATTING_CODE}, which is shared by all the
+     * matchers. Implementations are encouraged to cache the result.
+     *
+     * @return the serialized lore
+     */
+    default List<String> getSerializedHeldItemLore()
+    {
+        return this.getHeldItemLore().stream().map(TextSerializers.FORMATTING_CODE::serialize).collect(GuavaCollectors.toImmutableList());
+    }
+
+    /**
+     * Fetch the held item lore rendered by {@link Text#toPlain()}, which is shared by all the matchers in plain
+     * text mode. Implementations are encouraged to cache the result.
+     *
+     * @return the plain lore
+     */
+    default List<String> getPlainHeldItemLore()
+    {
+        return this.getHeldItemLore().stream().map(Text::toPlain).collect(GuavaCollectors.toImmutableList());
+    }
 }
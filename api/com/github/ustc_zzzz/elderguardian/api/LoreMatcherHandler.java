@@ -1,12 +1,17 @@
 package com.github.ustc_zzzz.elderguardian.api;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.util.GuavaCollectors;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * @author ustc_zzzz
@@ -48,4 +53,48 @@ public interface LoreMatcherHandler
     {
         return this.matchLoreByHeldItem(stat.getLoreStatId(), context, presets);
     }
+
+    /**
+     * Match the lore of a context against the matchers of all the given stat ids in a single pass.
+     *
+     * @param ids     the stat ids
+     * @param context the context providing the lore
+     * @param presets the presets for each stat id
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    default Map<String, List<DataContainer>> matchAllLoresByHeldItem(Collection<String> ids, LoreMatcherContext context,
+                                                                     Function<? super String, ? extends DataContainer> presets)
+    {
+        ImmutableMap.Builder<String, List<DataContainer>> builder = ImmutableMap.builder();
+        for (String id : ImmutableSet.copyOf(ids))
+        {
+            List<DataContainer> results = this.matchLoreByHeldItem(id, context, presets.apply(id));
+            if (!results.isEmpty()) builder.put(id, results);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Match the lore of a context against the matchers of all the given stat ids, and return the results whose
+     * values could be read without parsing.
+     *
+     * @param ids     the stat ids
+     * @param context the context providing the lore
+     * @param presets the presets for each stat id
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    default Map<String, List<LoreMatchResult>> matchAllResultsByHeldItem(Collection<String> ids, LoreMatcherContext context,
+                                                                         Function<? super String, ? extends DataView> presets)
+    {
+        ImmutableMap.Builder<String, List<LoreMatchResult>> builder = ImmutableMap.builder();
+        for (String id : ImmutableSet.copyOf(ids))
+        {
+            DataView p = presets.apply(id);
+            List<LoreMatcher> matchers = this.getLoreMatchers(id);
+            List<LoreMatchResult> results = matchers.stream().flatMap(m -> m.matchSerialized(m.getRenderedLore(context),
+                    context, p).stream()).collect(GuavaCollectors.toImmutableList());
+            if (!results.isEmpty()) builder.put(id, results);
+        }
+        return builder.build();
+    }
 }
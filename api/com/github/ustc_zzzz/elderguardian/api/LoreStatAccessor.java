@@ -0,0 +1,77 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import com.google.common.base.Strings;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A precompiled key for reading values from {@link LoreMatchResult}s.
+ * <p>
+ * Accessors are expected to be created once and stored in static fields, for example:
+ * <br>&nbsp;&nbsp;&nbsp;&nbsp;private static final LoreStatAccessor COOLDOWN = LoreStatAccessor.of("cooldown");
+ * </p>
+ *
+ * @author ustc_zzzz
+ * @see LoreMatchResult
+ */
+@NonnullByDefault
+public final class LoreStatAccessor
+{
+    public static LoreStatAccessor of(String key)
+    {
+        return new LoreStatAccessor(key);
+    }
+
+    private final String key;
+    private final DataQuery query;
+
+    private Slot lastSlot = new Slot(null, -1); // results of the same schema share the slot
+
+    private LoreStatAccessor(String key)
+    {
+        this.key = Objects.requireNonNull(Strings.emptyToNull(key), "The key should not be empty or null");
+        this.query = DataQuery.of('.', key);
+    }
+
+    public String getKey()
+    {
+        return this.key;
+    }
+
+    public DataQuery getQuery()
+    {
+        return this.query;
+    }
+
+    int indexIn(Map<String, Integer> schema)
+    {
+        Slot slot = this.lastSlot;
+        if (slot.schema == schema) return slot.index;
+        Integer index = schema.get(this.key);
+        this.lastSlot = slot = new Slot(schema, Objects.isNull(index) ? -1 : index);
+        return slot.index;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.key;
+    }
+
+    private static final class Slot
+    {
+        @Nullable
+        private final Object schema;
+        private final int index;
+
+        private Slot(@Nullable Object schema, int index)
+        {
+            this.schema = schema;
+            this.index = index;
+        }
+    }
+}
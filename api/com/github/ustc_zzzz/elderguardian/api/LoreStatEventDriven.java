@@ -1,20 +1,24 @@
 package com.github.ustc_zzzz.elderguardian.api;
 
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
+import java.util.Collection;
 import java.util.Optional;
 
 /**
  * An event driven implementation of LoreStat.
  * <p>
  * You can use the {@link org.spongepowered.api.event.Listener} class to annotate your methods, and add your features
- * by hooking events.
+ * by hooking events. For the events of attacking, damaging and using items, implementing {@link LoreStatEventHandler}
+ * is preferred, since the lores are matched only once for all the stats.
  * </p>
  *
  * @author ustc_zzzz
  * @see LoreStat
+ * @see LoreStatEventHandler
  * @see LoreStatService
  */
 @NonnullByDefault
@@ -51,6 +55,17 @@ public abstract class LoreStatEventDriven implements LoreStat
         return this.isEnabled;
     }
 
+    /**
+     * Get the online players holding an item with results of this stat, which is useful for periodic tasks.
+     *
+     * @return the holders
+     * @see LoreStatService#getActiveHolders(LoreStat)
+     */
+    protected Collection<Player> getActiveHolders()
+    {
+        return Sponge.getServiceManager().provideUnchecked(LoreStatService.class).getActiveHolders(this);
+    }
+
     protected Object getPluginInstance()
     {
         return this.pluginInstance;
@@ -0,0 +1,111 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.projectile.Projectile;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.action.CollideEvent;
+import org.spongepowered.api.event.entity.AttackEntityEvent;
+import org.spongepowered.api.event.entity.DamageEntityEvent;
+import org.spongepowered.api.event.item.inventory.InteractItemEvent;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+
+/**
+ * A LoreStat whose events are dispatched by the {@link LoreStatService}.
+ * <p>
+ * The service subscribes to each event type only once, resolves the player and the stats of the item only once
+ * for all the stats, and calls the methods of enabled stats which have at least one result. So there is no need
+ * to check the source of events or to match lores again in these methods. All the methods do nothing by default.
+ * </p>
+ *
+ * @author ustc_zzzz
+ * @see LoreStat
+ * @see LoreStatService
+ */
+@NonnullByDefault
+public interface LoreStatEventHandler extends LoreStat
+{
+    /**
+     * The order in which the methods of this LoreStat are called, for example {@link Order#LAST} for stats which
+     * read the final damage.
+     *
+     * @return the order
+     */
+    default Order getEventOrder()
+    {
+        return Order.DEFAULT;
+    }
+
+    /**
+     * Called when a player attacks an entity directly.
+     *
+     * @param event  the event
+     * @param player the attacking player
+     * @param stats  the results of the item held by the player
+     */
+    default void onAttackEntity(AttackEntityEvent event, Player player, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when a player damages an entity directly.
+     *
+     * @param event  the event
+     * @param player the damaging player
+     * @param stats  the results of the item held by the player
+     */
+    default void onDamageEntity(DamageEntityEvent event, Player player, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when a player damages an entity indirectly, for example by shooting an arrow.
+     *
+     * @param event  the event
+     * @param player the player which is the indirect source of the damage
+     * @param stats  the results of the item held by the player
+     */
+    default void onDamageEntityIndirectly(DamageEntityEvent event, Player player, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when a projectile hits something.
+     *
+     * @param event      the event
+     * @param projectile the projectile
+     * @param stats      the results of the item which fired the projectile
+     */
+    default void onCollideImpact(CollideEvent.Impact event, Projectile projectile, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when a player uses an item by left clicking.
+     *
+     * @param event  the event
+     * @param player the player
+     * @param stats  the results of the item used
+     */
+    default void onInteractItemPrimary(InteractItemEvent.Primary event, Player player, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Called when a player uses an item by right clicking.
+     *
+     * @param event  the event
+     * @param player the player
+     * @param stats  the results of the item held by the player
+     */
+    default void onInteractItemSecondary(InteractItemEvent.Secondary event, Player player, List<LoreMatchResult> stats)
+    {
+        // nothing by default
+    }
+}
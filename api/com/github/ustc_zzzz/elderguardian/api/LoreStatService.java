@@ -1,13 +1,21 @@
 package com.github.ustc_zzzz.elderguardian.api;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.key.Keys;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.projectile.Projectile;
 import org.spongepowered.api.item.inventory.ItemStackSnapshot;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.util.GuavaCollectors;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -32,12 +40,57 @@ public interface LoreStatService extends LoreMatcherHandler, LoreStatPresetsHand
 
     Optional<LoreStat> getLoreStat(String id);
 
+    /**
+     * Get the online players holding an item with results of a stat. The holders are maintained on held slot and
+     * inventory changes, so periodic tasks of stats could iterate only the holders instead of all the players. The
+     * default implementation matches the held item of every online player each time it is called.
+     *
+     * @param id the stat id
+     * @return an immutable list of the holders
+     */
+    default Collection<Player> getActiveHolders(String id)
+    {
+        return Sponge.getServer().getOnlinePlayers().stream()
+                .filter(player -> !this.matchLoreByHeldItem(id, this.getContextBy(player)).isEmpty())
+                .collect(GuavaCollectors.toImmutableList());
+    }
+
+    default Collection<Player> getActiveHolders(LoreStat stat)
+    {
+        return this.getActiveHolders(stat.getLoreStatId());
+    }
+
     LoreMatcherContext getContextBy(Player player);
 
     LoreMatcherContext getContextBy(Projectile entity);
 
     LoreMatcherContext getContextBy(Player player, ItemStackSnapshot stack);
 
+    /**
+     * Get the context of an item without any holder. The default implementation reads the lore each time it is
+     * fetched, while implementations are encouraged to read it only once.
+     *
+     * @param stack the item
+     * @return the context
+     */
+    default LoreMatcherContext getContextBy(ItemStackSnapshot stack)
+    {
+        return new LoreMatcherContext()
+        {
+            @Override
+            public Optional<Player> getPlayer()
+            {
+                return Optional.empty();
+            }
+
+            @Override
+            public List<Text> getHeldItemLore()
+            {
+                return stack.get(Keys.ITEM_LORE).orElse(ImmutableList.of());
+            }
+        };
+    }
+
     default List<DataContainer> matchLoreByHeldItem(String id, LoreMatcherContext context)
     {
         return this.matchLoreByHeldItem(id, context, this.getLoreStatPresetsContainer(id));
@@ -47,4 +100,43 @@ public interface LoreStatService extends LoreMatcherHandler, LoreStatPresetsHand
     {
         return this.matchLoreByHeldItem(stat.getLoreStatId(), context);
     }
+
+    /**
+     * Match the lore of a context against the matchers of every enabled stat in a single pass.
+     *
+     * @param context the context providing the lore
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    default Map<String, List<DataContainer>> matchAllLoresByHeldItem(LoreMatcherContext context)
+    {
+        Map<String, List<LoreMatchResult>> results = this.matchAllResultsByHeldItem(context);
+        return ImmutableMap.copyOf(Maps.transformValues(results, LoreMatchResult::toContainers));
+    }
+
+    /**
+     * Match the lore of a context against the matchers of every enabled stat in a single pass, and return the
+     * results whose values could be read without parsing. The default implementation matches every available stat
+     * one by one, while implementations are encouraged to match only enabled stats and cache the results.
+     *
+     * @param context the context providing the lore
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    default Map<String, List<LoreMatchResult>> matchAllResultsByHeldItem(LoreMatcherContext context)
+    {
+        return this.matchAllResultsByHeldItem(this.getAvailableStats(), context, this::getLoreStatPresetsContainer);
+    }
+
+    /**
+     * Match the lores of many items against every enabled stat, such as the items in inventories or shops. The
+     * lores are read on the caller thread, while the matching itself may run in parallel. The default implementation
+     * matches the items one by one on the caller thread.
+     *
+     * @param stacks the items
+     * @return an immutable list of the results of each item, in the same order as the items
+     */
+    default List<Map<String, List<LoreMatchResult>>> matchAllResultsByItems(Collection<ItemStackSnapshot> stacks)
+    {
+        return stacks.stream().map(this::getContextBy).map(this::matchAllResultsByHeldItem)
+                .collect(GuavaCollectors.toImmutableList());
+    }
 }
@@ -11,9 +11,13 @@ import org.spongepowered.api.text.TextRepresentable;
 import org.spongepowered.api.text.serializer.TextSerializers;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
+import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A class for translating between a text and a data container by a template.
@@ -22,6 +26,10 @@ import java.util.Optional;
  * <br>&nbsp;&nbsp;&nbsp;&nbsp;Template: "Skill: {{name}} (Cooldown {{cooldown}})"
  * <br>&nbsp;&nbsp;&nbsp;&nbsp;Translation: "Skill: arrow (Cooldown 100)" <==> {name: "arrow", cooldown: "100"}
  * </p>
+ * <p>
+ * An arg could be typed by a suffix, such as "{{cooldown:int}}" or "{{modifier:double}}", so that only a number
+ * could be matched by it. The suffix is not a part of the arg name.
+ * </p>
  *
  * @author ustc_zzzz
  * @see LoreStat
@@ -57,11 +65,160 @@ public final class LoreTemplate
      * @return the data container if the template matches the text, otherwise an empty
      */
     public Optional<DataContainer> translate(TextRepresentable text)
+    {
+        return this.translate(text, Engine.COMPILED);
+    }
+
+    /**
+     * Translate a text to a data container by the specified engine
+     * <p>
+     * Both of the engines give the same result for templates without typed args, while the {@link Engine#COMPILED}
+     * one runs in linear time. The {@link Engine#BACKTRACKING} one is kept as the legacy implementation for
+     * comparison, which knows nothing about arg types, so typed args are matched as strings and keep their suffixes.
+     * </p>
+     *
+     * @param text   text to be translated
+     * @param engine the engine used for matching
+     * @return the data container if the template matches the text, otherwise an empty
+     */
+    public Optional<DataContainer> translate(TextRepresentable text, Engine engine)
+    {
+        return this.translate(TextSerializers.FORMATTING_CODE.serialize(text.toText()), engine);
+    }
+
+    /**
+     * Translate a text already serialized by {@link TextSerializers#FORMATTING_CODE} to a data container
+     *
+     * @param textString serialized text to be translated
+     * @return the data container if the template matches the text, otherwise an empty
+     */
+    public Optional<DataContainer> translate(String textString)
+    {
+        return this.translate(textString, Engine.COMPILED);
+    }
+
+    /**
+     * Translate a text already serialized by {@link TextSerializers#FORMATTING_CODE} by the specified engine
+     *
+     * @param textString serialized text to be translated
+     * @param engine     the engine used for matching
+     * @return the data container if the template matches the text, otherwise an empty
+     */
+    public Optional<DataContainer> translate(String textString, Engine engine)
     {
         String firstPart = this.templateParts.get(0);
-        String textString = TextSerializers.FORMATTING_CODE.serialize(text.toText());
-        if (!textString.startsWith(firstPart)) return Optional.empty();
-        return this.deserializeString(textString, firstPart.length(), 1);
+        switch (Objects.requireNonNull(engine))
+        {
+        case BACKTRACKING:
+            // the legacy path, which runs neither the prefilter nor any check of arg types
+            if (!textString.startsWith(firstPart)) return Optional.empty();
+            return this.deserializeString(textString, firstPart.length(), 1);
+        default:
+            if (!this.passesPrefilter(textString)) return Optional.empty();
+            int[] bounds = new int[this.argNames.length * 2];
+            if (!this.deserializeStringCompiled(textString, firstPart.length(), bounds, 0)) return Optional.empty();
+            // the former Arg is set later so that it overrides the latter one which has the same name
+            DataContainer data = new MemoryDataContainer();
+            for (int i = this.argNames.length - 1; i >= 0; --i)
+            {
+                data.set(DataQuery.of('.', this.argNames[i]), textString.substring(bounds[2 * i], bounds[2 * i + 1]));
+            }
+            return Optional.of(data);
+        }
+    }
+
+    // match a serialized text by the compiled engine, and write the begin and the end of each Arg into the bounds
+    // the prefilter visits each character once, and the compiled engine visits each character once for each Arg
+    boolean matchBounds(String textString, int[] bounds, int boundsOffset, LoreMatchSteps steps)
+    {
+        long length = textString.length() + 1;
+        if (!steps.take(length) || !this.passesPrefilter(textString)) return false;
+        if (!steps.take(length * this.argNames.length)) return false;
+        return this.deserializeStringCompiled(textString, this.literals[0].length(), bounds, boundsOffset);
+    }
+
+    private boolean passesPrefilter(String textString)
+    {
+        this.prefilterChecks.increment();
+        if (this.mayMatch(textString)) return true;
+        this.prefilterRejections.increment();
+        return false;
+    }
+
+    // a cheap necessary condition of matching: all the literals occur in order without overlapping
+    private boolean mayMatch(String textString)
+    {
+        int argCount = this.argNames.length, length = textString.length();
+        if (argCount == 0) return textString.equals(this.literals[0]);
+
+        String firstPart = this.literals[0], lastPart = this.literals[argCount];
+        if (length < this.literalLength || !textString.startsWith(firstPart) || !textString.endsWith(lastPart)) return false;
+
+        int end = length - lastPart.length();
+        if (this.rarestLiteralIndex > 0)
+        {
+            String rarestPart = this.literals[this.rarestLiteralIndex];
+            int rarestIndex = textString.indexOf(rarestPart, firstPart.length());
+            if (rarestIndex < 0 || rarestIndex + rarestPart.length() > end) return false;
+        }
+
+        int index = firstPart.length();
+        for (int i = 1; i < argCount; ++i)
+        {
+            int literalIndex = textString.indexOf(this.literals[i], index);
+            if (literalIndex < 0) return false;
+            index = literalIndex + this.literals[i].length();
+        }
+        return end >= index;
+    }
+
+    /**
+     * Get how many texts have been checked by the prefilter, which rejects texts without all the literals in order
+     * before any capture work runs.
+     *
+     * @return the count of checked texts
+     */
+    public long getPrefilterCheckCount()
+    {
+        return this.prefilterChecks.sum();
+    }
+
+    /**
+     * Get how many texts have been rejected by the prefilter.
+     *
+     * @return the count of rejected texts
+     */
+    public long getPrefilterRejectionCount()
+    {
+        return this.prefilterRejections.sum();
+    }
+
+    // templates with longer literals and fewer args match fewer lines, and they are preferred as anchors
+    boolean isMoreSelectiveThan(LoreTemplate that)
+    {
+        if (this.literalLength != that.literalLength) return this.literalLength > that.literalLength;
+        return this.argNames.length < that.argNames.length;
+    }
+
+    int getArgCount()
+    {
+        return this.argNames.length;
+    }
+
+    // whether there is a former Arg which has the same name
+    boolean isDuplicateArg(int indexOfArg)
+    {
+        return this.duplicateArgs[indexOfArg];
+    }
+
+    boolean isNumericArg(int indexOfArg)
+    {
+        return this.argTypes[indexOfArg] != ArgType.STRING;
+    }
+
+    String getArgName(int indexOfArg)
+    {
+        return this.argNames[indexOfArg];
     }
 
     /**
@@ -72,22 +229,12 @@ public final class LoreTemplate
      */
     public Optional<Text> translate(DataView data)
     {
-        boolean isArg = false;
-        StringBuilder stringBuilder = new StringBuilder();
-        for (String part : this.templateParts)
+        StringBuilder stringBuilder = new StringBuilder(this.literals[0]);
+        for (int i = 0; i < this.argNames.length; ++i)
         {
-            if (isArg)
-            {
-                Optional<String> stringOptional = data.getString(DataQuery.of('.', part));
-                if (!stringOptional.isPresent()) return Optional.empty();
-                stringBuilder.append(stringOptional.get());
-                isArg = false;
-            }
-            else
-            {
-                stringBuilder.append(part);
-                isArg = true;
-            }
+            Optional<String> stringOptional = data.getString(DataQuery.of('.', this.argNames[i]));
+            if (!stringOptional.isPresent()) return Optional.empty();
+            stringBuilder.append(stringOptional.get()).append(this.literals[i + 1]);
         }
         return Optional.of(TextSerializers.FORMATTING_CODE.deserialize(stringBuilder.toString()));
     }
@@ -99,12 +246,17 @@ public final class LoreTemplate
      */
     public List<String> getTemplateArgs()
     {
-        ImmutableList.Builder<String> builder = ImmutableList.builder();
-        for (int i = 1; i < this.templateParts.size(); i += 2)
-        {
-            builder.add(this.templateParts.get(i));
-        }
-        return builder.build();
+        return ImmutableList.copyOf(this.argNames);
+    }
+
+    /**
+     * Fetch all the literal parts between template args, in which the first and the last ones may be empty.
+     *
+     * @return all the literal parts
+     */
+    public List<String> getTemplateLiterals()
+    {
+        return ImmutableList.copyOf(this.literals);
     }
 
     @Override
@@ -131,6 +283,19 @@ public final class LoreTemplate
     private final String rawTemplate;
     private final List<String> templateParts; // [String, Arg, String, Arg, ..., Arg, String], String may be empty
 
+    private final String[] argNames; // [Arg, Arg, ..., Arg]
+    private final ArgType[] argTypes; // [Type, Type, ..., Type]
+    private final boolean[] duplicateArgs; // [Duplicate, Duplicate, ..., Duplicate]
+    private final String[] literals; // [String, String, ..., String], one more than args
+    private final int[][] literalFailures; // failure functions of literals for searching all the occurrences
+    private final int literalLength; // the total length of literals, which is also the minimum length of texts
+    private final int rarestLiteralIndex; // the longest literal between args, which is checked first, or -1
+
+    private final LongAdder prefilterChecks = new LongAdder();
+    private final LongAdder prefilterRejections = new LongAdder();
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     private LoreTemplate(String template, String openArg, String closeArg)
     {
         int startIndex = 0;
@@ -149,6 +314,133 @@ public final class LoreTemplate
         }
         builder.add(template.substring(startIndex));
         this.templateParts = builder.build();
+
+        int argCount = this.templateParts.size() / 2;
+        this.argNames = new String[argCount];
+        this.argTypes = new ArgType[argCount];
+        this.duplicateArgs = new boolean[argCount];
+        this.literals = new String[argCount + 1];
+        this.literalFailures = new int[argCount + 1][];
+        int literalLength = 0, rarestLiteralIndex = -1, rarestLiteralLength = 0;
+        for (int i = 0; i <= argCount; ++i)
+        {
+            this.literals[i] = this.templateParts.get(i * 2);
+            this.literalFailures[i] = failureFunctionOf(this.literals[i]);
+            literalLength += this.literals[i].length();
+            if (i > 0 && i < argCount && this.literals[i].length() > rarestLiteralLength)
+            {
+                rarestLiteralLength = this.literals[i].length();
+                rarestLiteralIndex = i;
+            }
+            if (i < argCount)
+            {
+                String arg = this.templateParts.get(i * 2 + 1);
+                this.argTypes[i] = ArgType.of(arg);
+                this.argNames[i] = this.argTypes[i].stripSuffix(arg);
+                this.duplicateArgs[i] = Arrays.asList(this.argNames).subList(0, i).contains(this.argNames[i]);
+            }
+        }
+        this.literalLength = literalLength;
+        this.rarestLiteralIndex = rarestLiteralIndex;
+    }
+
+    // runEnds[i]: the end of the ascii digits starting from i
+    private static int[] digitRunEndsOf(String string, int[] runEnds)
+    {
+        int length = string.length();
+        runEnds[length] = length;
+        for (int i = length - 1; i >= 0; --i)
+        {
+            char c = string.charAt(i);
+            runEnds[i] = c >= '0' && c <= '9' ? runEnds[i + 1] : i;
+        }
+        return runEnds;
+    }
+
+    // the failure function of the KMP algorithm
+    private static int[] failureFunctionOf(String literal)
+    {
+        int length = literal.length();
+        int[] failure = new int[length + 1];
+        failure[0] = -1;
+        for (int i = 1, k = -1; i <= length; ++i)
+        {
+            while (k >= 0 && literal.charAt(k) != literal.charAt(i - 1)) k = failure[k];
+            failure[i] = ++k;
+        }
+        return failure;
+    }
+
+    // mark all the positions where the literal occurs in linear time
+    private void findOccurrences(String string, int indexOfLiteral, boolean[] occurrences)
+    {
+        String literal = this.literals[indexOfLiteral];
+        int[] failure = this.literalFailures[indexOfLiteral];
+        int length = string.length(), literalLength = literal.length();
+        Arrays.fill(occurrences, 0, length + 1, literalLength == 0);
+        if (literalLength == 0) return;
+        for (int i = 0, k = 0; i < length; ++i)
+        {
+            while (k >= 0 && literal.charAt(k) != string.charAt(i)) k = failure[k];
+            if (++k == literalLength)
+            {
+                occurrences[i + 1 - literalLength] = true;
+                k = failure[k];
+            }
+        }
+    }
+
+    // match all the Args with a String in linear time (memoized over string positions and template parts)
+    // the buffers are reused in the same thread so that a failed match allocates nothing
+    private boolean deserializeStringCompiled(String string, int indexFromString, int[] bounds, int boundsOffset)
+    {
+        int length = string.length(), argCount = this.argNames.length, width = length + 2;
+        if (argCount == 0) return indexFromString >= length;
+
+        Scratch scratch = SCRATCH.get();
+        int[] runEnds = null;
+        // ends[i * width + j]: the least end of the i-th Arg starting from j with which all the rest parts match
+        int[] ends = scratch.ends(argCount * width);
+        boolean[] occurrences = scratch.occurrences(length + 1);
+        for (int i = argCount - 1; i >= 0; --i)
+        {
+            int base = i * width, nextBase = base + width;
+            int literalLength = this.literals[i + 1].length();
+            this.findOccurrences(string, i + 1, occurrences);
+
+            ends[base + length + 1] = -1;
+            for (int j = length; j >= 0; --j)
+            {
+                int next = j + literalLength;
+                boolean rest = next <= length && occurrences[j];
+                if (rest) rest = i + 1 < argCount ? ends[nextBase + next] >= 0 : next == length;
+                ends[base + j] = rest ? j : ends[base + j + 1];
+            }
+
+            // a typed Arg could only end in a contiguous range, so take the least good end in the range
+            // ends are overwritten in ascending order while only the one of lo where lo > j is read, so it is in place
+            ArgType type = this.argTypes[i];
+            if (type != ArgType.STRING)
+            {
+                if (Objects.isNull(runEnds)) runEnds = digitRunEndsOf(string, scratch.runEnds(length + 1));
+                for (int j = 0; j <= length; ++j)
+                {
+                    long range = type.validEnds(string, j, runEnds);
+                    int lo = (int) (range >> 32), hi = (int) range, least = lo <= hi ? ends[base + lo] : -1;
+                    ends[base + j] = least <= hi ? least : -1;
+                }
+            }
+        }
+
+        for (int i = 0; i < argCount; ++i)
+        {
+            int end = ends[i * width + indexFromString];
+            if (0 > end) return false;
+            bounds[boundsOffset + 2 * i] = indexFromString;
+            bounds[boundsOffset + 2 * i + 1] = end;
+            indexFromString = end + this.literals[i + 1].length();
+        }
+        return true;
     }
 
     // match an Arg with a String
@@ -161,6 +453,7 @@ public final class LoreTemplate
             while (true)
             {
                 String newPart = this.templateParts.get(indexFromTemplate + 1);
+                if (oldIndex > string.length()) return Optional.empty();
                 oldIndex = string.indexOf(newPart, oldIndex);
                 if (0 > oldIndex) return Optional.empty();
                 int index = oldIndex + newPart.length();
@@ -175,4 +468,82 @@ public final class LoreTemplate
         }
         return indexFromString < string.length() ? Optional.empty() : Optional.of(new MemoryDataContainer());
     }
+
+    private static final class Scratch
+    {
+        private int[] ends = new int[0];
+        private int[] runEnds = new int[0];
+        private boolean[] occurrences = new boolean[0];
+
+        private int[] ends(int size)
+        {
+            return this.ends.length < size ? this.ends = new int[size] : this.ends;
+        }
+
+        private int[] runEnds(int size)
+        {
+            return this.runEnds.length < size ? this.runEnds = new int[size] : this.runEnds;
+        }
+
+        private boolean[] occurrences(int size)
+        {
+            return this.occurrences.length < size ? this.occurrences = new boolean[size] : this.occurrences;
+        }
+    }
+
+    private enum ArgType
+    {
+        STRING, INT, DOUBLE;
+
+        private final String suffix = ":" + this.name().toLowerCase(Locale.ROOT);
+
+        private static ArgType of(String arg)
+        {
+            if (arg.endsWith(INT.suffix)) return INT;
+            if (arg.endsWith(DOUBLE.suffix)) return DOUBLE;
+            return STRING;
+        }
+
+        private String stripSuffix(String arg)
+        {
+            return this == STRING ? arg : arg.substring(0, arg.length() - this.suffix.length());
+        }
+
+        // the range [lo, hi] of ends with which the string starting from the index is a number, packed into a long
+        private long validEnds(String string, int index, int[] runEnds)
+        {
+            int length = string.length(), lo = 0, hi = -1;
+            char c = index < length ? string.charAt(index) : '\0';
+            int start = c == '+' || c == '-' ? index + 1 : index;
+            if (runEnds[start] > start)
+            {
+                lo = start + 1;
+                hi = runEnds[start];
+                if (this == DOUBLE && hi < length && string.charAt(hi) == '.') hi = runEnds[hi + 1];
+            }
+            else if (this == DOUBLE && start < length && string.charAt(start) == '.' && runEnds[start + 1] > start + 1)
+            {
+                lo = start + 2;
+                hi = runEnds[start + 1];
+            }
+            return (long) lo << 32 | hi & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * The engines for matching a text with a template.
+     */
+    public enum Engine
+    {
+        /**
+         * Match the template by a linear time algorithm compiled from the template parts.
+         */
+        COMPILED,
+
+        /**
+         * Match the template by trying every possible position recursively, which is the legacy implementation
+         * and matches typed args as strings.
+         */
+        BACKTRACKING
+    }
 }
@@ -0,0 +1,33 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+
+/**
+ * Baselines of {@link LoreMatcher} for the benchmarks, which are in the same package so that the package-private
+ * implementations could be reached.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class LoreMatcherBaseline
+{
+    /**
+     * Match the lore as if there were no anchor, which is the full scan verifying every window in the order of the
+     * templates.
+     *
+     * @param matcher the matcher
+     * @param lores   the rendered lore
+     * @param presets the compiled presets
+     * @return the results, which are the same as {@link LoreMatcher#matchSerialized}
+     */
+    public static List<LoreMatchResult> matchWithoutAnchor(LoreMatcher matcher, List<String> lores, LoreMatchPresets presets)
+    {
+        return matcher.matchSerializedWithoutAnchor(lores, presets);
+    }
+
+    private LoreMatcherBaseline()
+    {
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianSpatialHash;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the range queries of the attract stat in one tick, for players clustered at the same place and
+ * players scattered in the world.
+ * <p>
+ * The per-player queries are modeled after the world, which scans every creature in the chunks intersecting the
+ * range and checks its bounding box, while the shared index scans each chunk once for all the players in the tick.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@State(Scope.Benchmark)
+@NonnullByDefault
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttractQueryBenchmark
+{
+    private static final int WORLD_SIZE = 1024;
+    private static final int CLUSTER_SIZE = 48;
+    private static final int RADIUS = 8;
+
+    @Param({"clustered", "scattered"})
+    public String layout = "clustered";
+
+    @Param({"8", "64"})
+    public int players = 8;
+
+    @Param({"4096"})
+    public int creatures = 4096;
+
+    private final List<double[]> playerPositions = new ArrayList<>();
+    private final Map<Long, List<double[]>> chunks = new HashMap<>();
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        boolean clustered = "clustered".equals(this.layout);
+        for (int i = 0; i < this.creatures; ++i)
+        {
+            // half of the creatures are at the farm where players may cluster
+            boolean atFarm = i % 2 == 0;
+            double[] position = atFarm ? this.positionOf(random, CLUSTER_SIZE) : this.positionOf(random, WORLD_SIZE);
+            this.chunks.computeIfAbsent(chunkKeyOf(position[0], position[2]), k -> new ArrayList<>()).add(position);
+        }
+        for (int i = 0; i < this.players; ++i)
+        {
+            this.playerPositions.add(this.positionOf(random, clustered ? CLUSTER_SIZE : WORLD_SIZE));
+        }
+    }
+
+    @Benchmark
+    public void queryPerPlayer(Blackhole blackhole)
+    {
+        for (double[] player : this.playerPositions)
+        {
+            double range = RADIUS * 2;
+            List<double[]> candidates = new ArrayList<>();
+            int minChunkX = chunkOf(player[0] - range), maxChunkX = chunkOf(player[0] + range);
+            int minChunkZ = chunkOf(player[2] - range), maxChunkZ = chunkOf(player[2] + range);
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; ++chunkX)
+            {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; ++chunkZ)
+                {
+                    List<double[]> chunk = this.chunks.get(chunkKeyOf(chunkX, chunkZ));
+                    if (chunk == null) continue;
+                    for (double[] creature : chunk)
+                    {
+                        boolean intersects = Math.abs(creature[0] - player[0]) <= range
+                                && Math.abs(creature[1] - player[1]) <= range
+                                && Math.abs(creature[2] - player[2]) <= range;
+                        if (intersects) candidates.add(creature);
+                    }
+                }
+            }
+            this.consumeWithinRadius(blackhole, player, candidates);
+        }
+    }
+
+    @Benchmark
+    public void querySharedIndex(Blackhole blackhole)
+    {
+        ElderGuardianSpatialHash<double[]> index = new ElderGuardianSpatialHash<>(16, (chunkX, chunkZ) ->
+        {
+            List<double[]> chunk = this.chunks.get(chunkKeyOf(chunkX, chunkZ));
+            return chunk == null ? Collections.emptyList() : new ArrayList<>(chunk);
+        });
+        for (double[] player : this.playerPositions)
+        {
+            List<double[]> candidates = new ArrayList<>();
+            index.forEachWithin(player[0], player[2], RADIUS + 2, candidates::add);
+            this.consumeWithinRadius(blackhole, player, candidates);
+        }
+    }
+
+    private void consumeWithinRadius(Blackhole blackhole, double[] player, List<double[]> candidates)
+    {
+        for (double[] creature : candidates)
+        {
+            double dx = creature[0] - player[0], dy = creature[1] - player[1], dz = creature[2] - player[2];
+            double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (distance >= 1 && distance <= RADIUS) blackhole.consume(creature);
+        }
+    }
+
+    private double[] positionOf(Random random, int size)
+    {
+        return new double[]{random.nextDouble() * size, 64 + random.nextDouble() * 4, random.nextDouble() * size};
+    }
+
+    private static int chunkOf(double coordinate)
+    {
+        return (int) Math.floor(coordinate / 16);
+    }
+
+    private static long chunkKeyOf(double x, double z)
+    {
+        return chunkKeyOf(chunkOf(x), chunkOf(z));
+    }
+
+    private static long chunkKeyOf(int chunkX, int chunkZ)
+    {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lore corpora used by the benchmarks, which are generated from the default templates in en_US.properties with a
+ * fixed seed so that the runs of different engines are comparable.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+final class LoreCorpus
+{
+    private static final String I18N_FILE = "/assets/elderguardian/i18n/en_US.properties";
+    private static final String DEFAULT_TEMPLATE_SUFFIX = ".defaultTemplate";
+
+    private static final Pattern ARG = Pattern.compile("\\{\\{([^}]*)}}");
+    private static final String COLORS = "0123456789abcdef";
+
+    // the args of the default templates which are read as numbers by the stats
+    private static final Set<String> NUMERIC_ARGS = ImmutableSet.of("cooldown", "range", "duration", "radius",
+            "max-speed", "modifier-percent", "maximum", "possibility");
+
+    private static final List<String> WORDS = ImmutableList.of("Ancient", "blade", "forged", "in", "the", "depths",
+            "of", "Nether", "fire", "poison", "speed", "regeneration", "guardian", "elder", "ocean", "monument");
+
+    // adjacent args could be split at any position, which is the worst case of the backtracking engine
+    private static final List<String> PATHOLOGICAL_TEMPLATES = ImmutableList.of(
+            "{{a}}{{b}}{{c}}{{d}}: {{e:int}}",
+            "&7{{a}}{{b}}{{c}}{{d}}{{e}}{{f}}!",
+            "{{x}} {{y}}{{z}} {{w}}{{v}} ({{u:double}})");
+
+    static List<String> defaultTemplates()
+    {
+        try (InputStream stream = LoreCorpus.class.getResourceAsStream(I18N_FILE))
+        {
+            if (Objects.isNull(stream)) throw new IllegalStateException("Cannot find " + I18N_FILE + " in classpath");
+            ResourceBundle bundle = new PropertyResourceBundle(new InputStreamReader(stream, Charsets.UTF_8));
+            SortedMap<String, String> templates = new TreeMap<>();
+            for (String key : bundle.keySet())
+            {
+                if (!key.endsWith(DEFAULT_TEMPLATE_SUFFIX)) continue;
+                templates.put(key, new MessageFormat(bundle.getString(key)).format(new Object[0]));
+            }
+            return ImmutableList.copyOf(templates.values());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static List<String> pathologicalTemplates()
+    {
+        return PATHOLOGICAL_TEMPLATES;
+    }
+
+    static List<String> templatesOf(String corpus)
+    {
+        switch (corpus)
+        {
+        case "default":
+            return defaultTemplates();
+        case "pathological":
+            return pathologicalTemplates();
+        default:
+            throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+    }
+
+    // variants of the template in other colors, so that a stat has many similar matchers
+    static List<String> variantsOf(String template, int count)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        builder.add(template);
+        for (int i = 1; i < count; ++i) builder.add("&" + COLORS.charAt(i % COLORS.length()) + template);
+        return builder.build();
+    }
+
+    static String lineOf(String template, Random random)
+    {
+        StringBuffer buffer = new StringBuffer();
+        Matcher matcher = ARG.matcher(template);
+        while (matcher.find())
+        {
+            String arg = matcher.group(1), value;
+            if (arg.endsWith(":int") || NUMERIC_ARGS.contains(arg)) value = Integer.toString(random.nextInt(1000));
+            else if (arg.endsWith(":double")) value = Integer.toString(random.nextInt(100)) + "." + random.nextInt(10);
+            else if (arg.equals("color")) value = "&" + COLORS.charAt(random.nextInt(COLORS.length()));
+            else value = WORDS.get(random.nextInt(WORDS.size()));
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(value));
+        }
+        return matcher.appendTail(buffer).toString();
+    }
+
+    static String fillerOf(Random random)
+    {
+        StringBuilder builder = new StringBuilder("&").append(COLORS.charAt(random.nextInt(COLORS.length())));
+        for (int i = 4 + random.nextInt(8); i > 0; --i) builder.append(WORDS.get(random.nextInt(WORDS.size()))).append(' ');
+        return builder.append(random.nextInt(100)).toString();
+    }
+
+    // about one in five lines is generated from the templates, and the others are flavor text
+    static List<String> loreOf(int lines, List<String> templates, Random random)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (int i = 0; i < lines; ++i)
+        {
+            boolean stat = random.nextInt(5) == 0;
+            builder.add(stat ? lineOf(templates.get(random.nextInt(templates.size())), random) : fillerOf(random));
+        }
+        return builder.build();
+    }
+
+    private LoreCorpus()
+    {
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchPresets;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherBaseline;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of multi-line {@link LoreMatcher}s on long lores, which compare the window search anchored on the most
+ * selective template with the full scan verifying every window in the order of the templates.
+ * <p>
+ * The "stats" matchers consist of successive default templates, where the first template is about as selective as
+ * the anchor. The "header" matchers start with a name line matching almost every line, which the full scan has to
+ * capture for every window while the anchored search skips it unless the anchor matches.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@State(Scope.Benchmark)
+@NonnullByDefault
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoreMatcherAnchorBenchmark
+{
+    private static final int TEMPLATES_PER_MATCHER = 3;
+    private static final String HEADER_TEMPLATE = "{{color}}{{name}}";
+
+    @Param({"30", "60"})
+    public int loreLines = 30;
+
+    @Param({"stats", "header"})
+    public String matcherKind = "stats";
+
+    @Param({"anchored", "full-scan"})
+    public String scan = "anchored";
+
+    private final List<LoreMatcher> matchers = new ArrayList<>();
+
+    private List<String> lore = ImmutableList.of();
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        List<String> templates = LoreCorpus.defaultTemplates();
+        boolean header = "header".equals(this.matcherKind);
+        int statCount = header ? TEMPLATES_PER_MATCHER - 1 : TEMPLATES_PER_MATCHER;
+        for (int i = 0; i + statCount <= templates.size(); ++i)
+        {
+            List<String> window = new ArrayList<>(templates.subList(i, i + statCount));
+            if (header) window.add(0, HEADER_TEMPLATE);
+            this.matchers.add(LoreMatcher.fromContainer(new MemoryDataContainer().set(LoreMatcher.TEMPLATES, window)));
+        }
+
+        // most of the windows fail, while one window in the middle matches the first matcher
+        List<String> lore = new ArrayList<>(LoreCorpus.loreOf(this.loreLines, templates, random));
+        int offset = (this.loreLines - TEMPLATES_PER_MATCHER) / 2;
+        for (int i = 0; i < TEMPLATES_PER_MATCHER; ++i)
+        {
+            String template = header ? i == 0 ? HEADER_TEMPLATE : templates.get(i - 1) : templates.get(i);
+            lore.set(offset + i, LoreCorpus.lineOf(template, random));
+        }
+        this.lore = ImmutableList.copyOf(lore);
+    }
+
+    @Benchmark
+    public void matchSerialized(Blackhole blackhole)
+    {
+        boolean anchored = "anchored".equals(this.scan);
+        for (LoreMatcher matcher : this.matchers)
+        {
+            if (anchored)
+            {
+                blackhole.consume(matcher.matchSerialized(this.lore, LoreMatcherContext.EMPTY, LoreMatchPresets.EMPTY));
+            }
+            else
+            {
+                blackhole.consume(LoreMatcherBaseline.matchWithoutAnchor(matcher, this.lore, LoreMatchPresets.EMPTY));
+            }
+        }
+    }
+}
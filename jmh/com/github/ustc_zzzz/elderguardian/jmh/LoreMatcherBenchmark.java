@@ -0,0 +1,85 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchPresets;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link LoreMatcher} over lores of different sizes, with many matchers for each default template.
+ *
+ * @author ustc_zzzz
+ */
+@State(Scope.Benchmark)
+@NonnullByDefault
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoreMatcherBenchmark
+{
+    @Param({"5", "20", "40"})
+    public int loreLines = 5;
+
+    @Param({"1", "4", "16"})
+    public int matchersPerStat = 1;
+
+    @Param({"false", "true"})
+    public boolean plainText = false;
+
+    private final List<LoreMatcher> matchers = new ArrayList<>();
+    private final DataContainer presets = new MemoryDataContainer();
+
+    private List<Text> lore = ImmutableList.of();
+    private LoreMatcherContext context = LoreMatcherContext.EMPTY;
+
+    @Setup
+    public void setup()
+    {
+        SpongeStubs.install();
+        Random random = new Random(42);
+        List<String> templates = LoreCorpus.defaultTemplates();
+        for (String template : templates)
+        {
+            for (String variant : LoreCorpus.variantsOf(template, this.matchersPerStat))
+            {
+                DataContainer data = new MemoryDataContainer()
+                        .set(LoreMatcher.TEMPLATES, ImmutableList.of(variant)).set(LoreMatcher.PLAIN_TEXT, this.plainText);
+                this.matchers.add(LoreMatcher.fromContainer(data));
+            }
+        }
+        List<String> serializedLore = LoreCorpus.loreOf(this.loreLines, templates, random);
+        this.lore = SpongeStubs.textsOf(serializedLore);
+        this.context = SpongeStubs.contextOf(serializedLore);
+    }
+
+    // each matcher renders the lore by itself
+    @Benchmark
+    public void match(Blackhole blackhole)
+    {
+        for (LoreMatcher matcher : this.matchers) blackhole.consume(matcher.match(this.lore, this.context, this.presets));
+    }
+
+    // the lore is rendered once and shared by all the matchers, and the values are not converted to containers
+    @Benchmark
+    public void matchSerialized(Blackhole blackhole)
+    {
+        for (LoreMatcher matcher : this.matchers)
+        {
+            List<String> renderedLore = matcher.getRenderedLore(this.context);
+            blackhole.consume(matcher.matchSerialized(renderedLore, this.context, LoreMatchPresets.EMPTY));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherHandler;
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link LoreMatcherHandler} matching a held item against all the stats, each of which has many
+ * matchers. The pathological templates are registered as an extra stat when required.
+ *
+ * @author ustc_zzzz
+ */
+@State(Scope.Benchmark)
+@NonnullByDefault
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoreMatcherHandlerBenchmark
+{
+    @Param({"5", "20", "40"})
+    public int loreLines = 5;
+
+    @Param({"1", "4", "16"})
+    public int matchersPerStat = 1;
+
+    @Param({"false", "true"})
+    public boolean pathological = false;
+
+    private final LoreMatcherHandler handler = SpongeStubs.handler();
+    private final DataContainer presets = new MemoryDataContainer();
+    private final List<String> ids = new ArrayList<>();
+
+    private LoreMatcherContext context = LoreMatcherContext.EMPTY;
+
+    @Setup
+    public void setup()
+    {
+        SpongeStubs.install();
+        Random random = new Random(42);
+        List<String> templates = new ArrayList<>(LoreCorpus.defaultTemplates());
+        for (int i = 0; i < templates.size(); ++i) this.addMatchers("stat" + i, templates.get(i));
+        if (this.pathological)
+        {
+            List<String> pathologicalTemplates = LoreCorpus.pathologicalTemplates();
+            for (String template : pathologicalTemplates) this.addMatchers("pathological", template);
+            templates.addAll(pathologicalTemplates);
+        }
+        this.context = SpongeStubs.contextOf(LoreCorpus.loreOf(this.loreLines, templates, random));
+    }
+
+    private void addMatchers(String id, String template)
+    {
+        for (String variant : LoreCorpus.variantsOf(template, this.matchersPerStat))
+        {
+            DataContainer data = new MemoryDataContainer().set(LoreMatcher.TEMPLATES, ImmutableList.of(variant));
+            this.handler.addLoreMatcher(id, LoreMatcher.fromContainer(data));
+        }
+        if (!this.ids.contains(id)) this.ids.add(id);
+    }
+
+    @Benchmark
+    public void matchLoreByHeldItem(Blackhole blackhole)
+    {
+        for (String id : this.ids) blackhole.consume(this.handler.matchLoreByHeldItem(id, this.context, this.presets));
+    }
+
+    @Benchmark
+    public void matchAllResultsByHeldItem(Blackhole blackhole)
+    {
+        blackhole.consume(this.handler.matchAllResultsByHeldItem(this.ids, this.context, id -> this.presets));
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link LoreTemplate#translate(String, LoreTemplate.Engine)} for both of the engines, on lines
+ * matching the templates, lines almost matching them, and unrelated flavor text.
+ *
+ * @author ustc_zzzz
+ */
+@State(Scope.Benchmark)
+@NonnullByDefault
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoreTemplateBenchmark
+{
+    @Param({"COMPILED", "BACKTRACKING"})
+    public LoreTemplate.Engine engine = LoreTemplate.Engine.COMPILED;
+
+    @Param({"default", "pathological"})
+    public String corpus = "default";
+
+    private final List<LoreTemplate> templates = new ArrayList<>();
+    private final List<String> matchingLines = new ArrayList<>();
+    private final List<String> nearMissLines = new ArrayList<>();
+    private final List<String> fillerLines = new ArrayList<>();
+
+    @Setup
+    public void setup()
+    {
+        SpongeStubs.install();
+        Random random = new Random(42);
+        for (String template : LoreCorpus.templatesOf(this.corpus))
+        {
+            String line = LoreCorpus.lineOf(template, random);
+            this.templates.add(LoreTemplate.of(template, LoreMatcher.DEFAULT_OPEN_ARG, LoreMatcher.DEFAULT_CLOSE_ARG));
+            this.matchingLines.add(line);
+            this.nearMissLines.add(line + "?");
+            this.fillerLines.add(LoreCorpus.fillerOf(random));
+        }
+    }
+
+    @Benchmark
+    public void translateMatching(Blackhole blackhole)
+    {
+        for (int i = 0; i < this.templates.size(); ++i)
+        {
+            blackhole.consume(this.templates.get(i).translate(this.matchingLines.get(i), this.engine));
+        }
+    }
+
+    @Benchmark
+    public void translateNearMiss(Blackhole blackhole)
+    {
+        for (int i = 0; i < this.templates.size(); ++i)
+        {
+            blackhole.consume(this.templates.get(i).translate(this.nearMissLines.get(i), this.engine));
+        }
+    }
+
+    @Benchmark
+    public void translateFiller(Blackhole blackhole)
+    {
+        for (LoreTemplate template : this.templates)
+        {
+            for (String line : this.fillerLines) blackhole.consume(template.translate(line, this.engine));
+        }
+    }
+}
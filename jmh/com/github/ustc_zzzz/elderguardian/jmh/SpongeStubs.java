@@ -0,0 +1,163 @@
+package com.github.ustc_zzzz.elderguardian.jmh;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherHandler;
+import com.google.common.collect.ImmutableList;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.LiteralText;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Stubs of the parts of Sponge used by lore matching, so that the benchmarks could run outside a server.
+ * <p>
+ * Lore lines are wrapped as literal texts whose content is already serialized, and the formatting code serializer
+ * is replaced by one returning the content directly, while the plain one, which is used by {@link Text#toPlain()},
+ * returns the content with formatting codes stripped. So only the matching itself is measured.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+final class SpongeStubs
+{
+    private static final Pattern FORMATTING_CODE = Pattern.compile("&[0-9a-fk-or]", Pattern.CASE_INSENSITIVE);
+
+    private static boolean installed = false;
+
+    static synchronized void install()
+    {
+        if (installed) return;
+        try
+        {
+            // the fields are final, so they could only be replaced in an unsafe way
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Unsafe unsafe = (Unsafe) unsafeField.get(null);
+            unsafe.ensureClassInitialized(TextSerializers.class);
+            replaceSerializer(unsafe, "FORMATTING_CODE", content -> content);
+            replaceSerializer(unsafe, "PLAIN", content -> FORMATTING_CODE.matcher(content).replaceAll(""));
+            installed = true;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the serializer renders the content of a literal text, which is used by Text#toPlain() for the plain one
+    private static void replaceSerializer(Unsafe unsafe, String name, Function<String, String> render)
+            throws ReflectiveOperationException
+    {
+        Field field = TextSerializers.class.getField(name);
+        Object serializer = Proxy.newProxyInstance(SpongeStubs.class.getClassLoader(),
+                new Class<?>[]{field.getType()}, (proxy, method, args) ->
+                {
+                    switch (method.getName())
+                    {
+                    case "serialize":
+                        return render.apply(((LiteralText) args[0]).getContent());
+                    case "deserialize":
+                        return Text.of((String) args[0]);
+                    case "stripCodes":
+                        return FORMATTING_CODE.matcher((String) args[0]).replaceAll("");
+                    case "getCharacter":
+                        return '&';
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "SpongeStubs." + name;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        unsafe.putObjectVolatile(unsafe.staticFieldBase(field), unsafe.staticFieldOffset(field), serializer);
+    }
+
+    static List<Text> textsOf(List<String> lore)
+    {
+        ImmutableList.Builder<Text> builder = ImmutableList.builder();
+        for (String line : lore) builder.add(Text.of(line));
+        return builder.build();
+    }
+
+    static LoreMatcherContext contextOf(List<String> lore)
+    {
+        List<Text> texts = textsOf(lore);
+        ImmutableList.Builder<String> plainLoreBuilder = ImmutableList.builder();
+        for (String line : lore) plainLoreBuilder.add(FORMATTING_CODE.matcher(line).replaceAll(""));
+        List<String> plainLore = plainLoreBuilder.build();
+        return new LoreMatcherContext()
+        {
+            @Override
+            public Optional<Player> getPlayer()
+            {
+                return Optional.empty();
+            }
+
+            @Override
+            public List<Text> getHeldItemLore()
+            {
+                return texts;
+            }
+
+            @Override
+            public List<String> getSerializedHeldItemLore()
+            {
+                return lore;
+            }
+
+            @Override
+            public List<String> getPlainHeldItemLore()
+            {
+                return plainLore;
+            }
+        };
+    }
+
+    static LoreMatcherHandler handler()
+    {
+        Map<String, List<LoreMatcher>> matchers = new LinkedHashMap<>();
+        return new LoreMatcherHandler()
+        {
+            @Override
+            public Collection<String> getAvailableLoreMatchers()
+            {
+                return matchers.keySet();
+            }
+
+            @Override
+            public List<LoreMatcher> getLoreMatchers(String id)
+            {
+                return matchers.getOrDefault(id, ImmutableList.of());
+            }
+
+            @Override
+            public void clearLoreMatchers(String id)
+            {
+                matchers.remove(id);
+            }
+
+            @Override
+            public void addLoreMatcher(String id, LoreMatcher loreMatcher)
+            {
+                matchers.computeIfAbsent(id, k -> new ArrayList<>()).add(loreMatcher);
+            }
+        };
+    }
+
+    private SpongeStubs()
+    {
+    }
+}
@@ -163,6 +163,11 @@ public class ElderGuardian
         }
     }
 
+    private CommentedConfigurationNode getStatConfig(CommentedConfigurationNode root, ElderGuardianStatBase stat)
+    {
+        return root.getNode(PLUGIN_ID, "stat-settings", ElderGuardianHelper.swapUnderlinesAndDashes(stat.getLoreStatId()));
+    }
+
     private void loadConfig()
     {
         try
@@ -171,6 +176,9 @@ public class ElderGuardian
 
             this.availableStats = this.getEnabledStats(root.getNode(PLUGIN_ID, "enabled-modules"));
             this.loreStatService.loadConfig(root.getNode(PLUGIN_ID, "data-storage"));
+            this.loreStatService.loadCacheConfig(root.getNode(PLUGIN_ID, "match-cache"));
+            this.loreStatService.getMatchBudget().loadConfig(root.getNode(PLUGIN_ID, "match-budget"));
+            for (ElderGuardianStatBase stat : this.stats) stat.loadConfig(this.getStatConfig(root, stat));
 
             this.rootConfig = root;
         }
@@ -188,6 +196,9 @@ public class ElderGuardian
 
             this.setEnabledStats(root.getNode(PLUGIN_ID, "enabled-modules"), availableStats);
             this.loreStatService.saveConfig(root.getNode(PLUGIN_ID, "data-storage"));
+            this.loreStatService.saveCacheConfig(root.getNode(PLUGIN_ID, "match-cache"));
+            this.loreStatService.getMatchBudget().saveConfig(root.getNode(PLUGIN_ID, "match-budget"));
+            for (ElderGuardianStatBase stat : this.stats) stat.saveConfig(this.getStatConfig(root, stat));
 
             configurationLoader.save(root);
         }
@@ -2,10 +2,13 @@ package com.github.ustc_zzzz.elderguardian.command;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
 import com.github.ustc_zzzz.elderguardian.ElderGuardianTranslation;
+import com.github.ustc_zzzz.elderguardian.api.LoreEdit;
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
 import com.github.ustc_zzzz.elderguardian.api.LoreTemplate;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianService;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
+import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.command.*;
 import org.spongepowered.api.command.args.CommandContext;
 import org.spongepowered.api.command.args.GenericArguments;
@@ -103,7 +106,7 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
                 .executor(this::executeMatcherList).build();
         this.matcherAddCommand = CommandSpec.builder()
                 .arguments(
-                        GenericArguments.flags().valueFlag(
+                        GenericArguments.flags().flag("-plain-text").valueFlag(
                                 GenericArguments.string(Text.of("open-arg")), "-open-arg").valueFlag(
                                 GenericArguments.string(Text.of("close-arg")), "-close-arg").buildWith(
                                 GenericArguments.seq(
@@ -331,6 +334,8 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
                     .style(TextStyles.UNDERLINE)
                     .onHover(TextActions.showText(Text.joinWith(Text.of("\n"), lores)))));
             builder.add(Text.of(" |- ", this.translation.take("elderguardian.command.matcherList.showLines", size)));
+            long checked = matcher.getPrefilterCheckCount(), rejected = matcher.getPrefilterRejectionCount();
+            builder.add(Text.of(" |- ", this.translation.take("elderguardian.command.matcherList.showPrefilter", rejected, checked)));
             return builder.build();
         }).collect(Collectors.toList());
 
@@ -339,6 +344,8 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
             PaginationList.builder()
                     .linesPerPage(lines.size() / items.size() * 4 + 2)
                     .title(this.translation.take("elderguardian.command.matcherList.header", items.size()))
+                    .footer(this.translation.take("elderguardian.command.matcherList.footer",
+                            this.service.getMatchBudget().getQuarantinedCount()))
                     .contents(lines).sendTo(src);
         }
         else
@@ -364,6 +371,7 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
         data.set(LoreMatcher.TEMPLATES, templates);
         openArg.ifPresent(s -> data.set(LoreMatcher.OPEN_ARG, s));
         closeArg.ifPresent(s -> data.set(LoreMatcher.CLOSE_ARG, s));
+        if (args.hasAny("plain-text")) data.set(LoreMatcher.PLAIN_TEXT, true);
         this.service.addLoreMatcher(key, LoreMatcher.fromContainer(data));
         src.sendMessage(this.translation.take("elderguardian.command.matcherAdd.matcherAddedSuccessfully", key));
         return CommandResult.success();
@@ -415,7 +423,8 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
             throw new CommandException(this.translation.take("elderguardian.command.matcherApply.itemUnavailable"));
         }
         ItemStack playerStack = stackOptional.get();
-        List<Text> lores = playerStack.get(Keys.ITEM_LORE).map(LinkedList::new).orElseGet(LinkedList::new);
+        List<Text> previousLores = playerStack.get(Keys.ITEM_LORE).map(ImmutableList::copyOf).orElse(ImmutableList.of());
+        List<Text> lores = new LinkedList<>(previousLores);
         for (LoreTemplate template : matcher.getLoreTemplates())
         {
             for (String s : template.getTemplateArgs())
@@ -435,7 +444,11 @@ public class ElderGuardianCommandManager implements Supplier<CommandCallable>
             });
         }
         playerStack.offer(Keys.ITEM_LORE, lores);
+        LoreEdit edit = LoreEdit.appended(previousLores.size(), lores.size() - previousLores.size());
+        LoreMatcherContext context = this.service.getContextBy(playerStack.createSnapshot());
+        this.service.stampItemStats(playerStack, this.service.rematchAllResultsByHeldItem(previousLores, edit, context));
         player.setItemInHand(handType, playerStack);
+        this.service.invalidateHeldItemStats(player);
         player.sendMessage(this.translation.take("elderguardian.command.matcherApply.loreAppliedSuccessfully"));
         return CommandResult.success();
     }
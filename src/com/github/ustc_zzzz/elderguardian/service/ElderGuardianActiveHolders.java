@@ -0,0 +1,144 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.google.common.collect.ImmutableList;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.EventListener;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The registry of players holding items with results of each stat, so that periodic tasks of stats could iterate
+ * only the holders.
+ * <p>
+ * Since inventory events are fired before the change is applied, a player is only marked when the held item is
+ * invalidated, and checked again in the next tick. Changes without any event are caught by a periodic sweep of all
+ * the online players, and all of them are checked again when the matchers or the enabled stats change.
+ * </p>
+ * <p>
+ * Holders are kept as unique ids and resolved when they are fetched, since the player object is replaced when the
+ * player respawns or changes dimension.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public class ElderGuardianActiveHolders
+{
+    private static final int SWEEP_TICKS = 200;
+
+    private final ElderGuardianService service;
+    private final Set<UUID> pending = new LinkedHashSet<>();
+    private final Map<String, Set<UUID>> holders = new HashMap<>();
+
+    private long generation = -1;
+    private int ticksToSweep = SWEEP_TICKS;
+
+    ElderGuardianActiveHolders(ElderGuardian plugin, ElderGuardianService service)
+    {
+        this.service = service;
+        Sponge.getScheduler().createTaskBuilder().intervalTicks(1).execute(this::checkPending).submit(plugin);
+        Sponge.getEventManager().registerListener(plugin, ClientConnectionEvent.Join.class, new Join());
+        Sponge.getEventManager().registerListener(plugin, ClientConnectionEvent.Disconnect.class, new Disconnect());
+    }
+
+    /**
+     * Get the online players holding an item with results of a stat.
+     *
+     * @param id the stat id
+     * @return an immutable list of the holders, in the order they started holding the item
+     */
+    public List<Player> get(String id)
+    {
+        Set<UUID> uuids = this.holders.get(id);
+        if (Objects.isNull(uuids) || uuids.isEmpty()) return ImmutableList.of();
+
+        ImmutableList.Builder<Player> builder = ImmutableList.builder();
+        for (UUID uuid : uuids)
+        {
+            Optional<Player> playerOptional = Sponge.getServer().getPlayer(uuid);
+            if (playerOptional.isPresent()) builder.add(playerOptional.get());
+        }
+        return builder.build();
+    }
+
+    public void invalidate(Player player)
+    {
+        this.pending.add(player.getUniqueId());
+    }
+
+    public void invalidateAll()
+    {
+        this.generation = -1;
+    }
+
+    private void checkPending(Task task)
+    {
+        long generation = this.service.getGeneration();
+        if (--this.ticksToSweep <= 0 || this.generation != generation)
+        {
+            this.generation = generation;
+            this.ticksToSweep = SWEEP_TICKS;
+            for (Player player : Sponge.getServer().getOnlinePlayers()) this.pending.add(player.getUniqueId());
+        }
+        if (this.pending.isEmpty()) return;
+
+        for (UUID uuid : this.pending)
+        {
+            Optional<Player> playerOptional = Sponge.getServer().getPlayer(uuid);
+            if (playerOptional.isPresent()) this.check(playerOptional.get());
+        }
+        this.pending.clear();
+    }
+
+    private void check(Player player)
+    {
+        UUID uuid = player.getUniqueId();
+        Map<String, List<LoreMatchResult>> stats = this.service.getHeldItemStats(player);
+        for (Map.Entry<String, Set<UUID>> entry : this.holders.entrySet())
+        {
+            if (!stats.containsKey(entry.getKey())) entry.getValue().remove(uuid);
+        }
+        for (Map.Entry<String, List<LoreMatchResult>> entry : stats.entrySet())
+        {
+            if (entry.getValue().isEmpty()) continue;
+            this.holders.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(uuid);
+        }
+    }
+
+    private void remove(UUID uuid)
+    {
+        this.pending.remove(uuid);
+        for (Set<UUID> uuids : this.holders.values()) uuids.remove(uuid);
+    }
+
+    private class Join implements EventListener<ClientConnectionEvent.Join>
+    {
+        @Override
+        public void handle(ClientConnectionEvent.Join event) throws Exception
+        {
+            ElderGuardianActiveHolders.this.invalidate(event.getTargetEntity());
+        }
+    }
+
+    private class Disconnect implements EventListener<ClientConnectionEvent.Disconnect>
+    {
+        @Override
+        public void handle(ClientConnectionEvent.Disconnect event) throws Exception
+        {
+            ElderGuardianActiveHolders.this.remove(event.getTargetEntity().getUniqueId());
+        }
+    }
+}
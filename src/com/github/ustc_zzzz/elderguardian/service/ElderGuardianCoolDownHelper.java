@@ -3,66 +3,91 @@ package com.github.ustc_zzzz.elderguardian.service;
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
 import com.github.ustc_zzzz.elderguardian.api.CoolDownHelper;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Table;
-import com.google.common.collect.Tables;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.EventListener;
 import org.spongepowered.api.event.entity.MoveEntityEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 import org.spongepowered.api.world.World;
 
-import java.util.HashMap;
 import java.util.Objects;
-import java.util.WeakHashMap;
 
 /**
+ * A facade of {@link ElderGuardianCoolDownStore}, which interns the keys written and reads the time of the world.
+ * Cooldowns could also be read and written by the ids of interned keys, which skips hashing the keys.
+ *
  * @author ustc_zzzz
  */
 @NonnullByDefault
 public class ElderGuardianCoolDownHelper implements CoolDownHelper
 {
     private final long currentThreadID;
-    private final Table<Player, String, Long> coolDownExpireTable;
+    private final ElderGuardianCoolDownStore store = new ElderGuardianCoolDownStore();
 
     ElderGuardianCoolDownHelper(ElderGuardian plugin)
     {
         this.currentThreadID = Thread.currentThread().getId();
-        this.coolDownExpireTable = Tables.newCustomTable(new WeakHashMap<>(), HashMap::new);
         Sponge.getEventManager().registerListener(plugin, MoveEntityEvent.Teleport.class, new TeleportEntity());
+        Sponge.getEventManager().registerListener(plugin, ClientConnectionEvent.Disconnect.class, new Disconnect());
+    }
+
+    /**
+     * Intern a key, so that the cooldowns of the key could be read and written by the id without hashing the key.
+     * Stats are expected to resolve their keys once when they are enabled.
+     *
+     * @param key the key
+     * @return the id of the key, which never changes
+     */
+    public int getKeyId(String key)
+    {
+        this.checkThreadID();
+        return this.store.getKeyId(key);
     }
 
     @Override
     public long getCoolDown(String key, Player player)
     {
         this.checkThreadID();
-        Long expireTime = this.coolDownExpireTable.get(player, key);
-        if (expireTime == null) return 0;
-        long coolDown = expireTime - this.now(player);
-        if (coolDown > 0) return coolDown;
-        this.coolDownExpireTable.remove(player, key);
-        return 0;
+        return this.getCoolDown(this.store.findKeyId(key), player);
     }
 
     @Override
     public long setCoolDown(String key, long coolDown, Player player)
     {
         this.checkThreadID();
-        long now = this.now(player);
-        Long expireTime = this.coolDownExpireTable.put(player, key, coolDown + now);
-        return expireTime != null && expireTime > now ? expireTime - now : 0;
+        return this.setCoolDown(this.store.getKeyId(key), coolDown, player);
     }
 
     @Override
     public long addCoolDown(String key, long coolDown, Player player)
     {
         this.checkThreadID();
-        long now = this.now(player);
-        Long expireTime = this.coolDownExpireTable.get(player, key);
-        long exactExpireTime = expireTime != null && expireTime > now ? expireTime : now;
-        this.coolDownExpireTable.put(player, key, coolDown + exactExpireTime);
-        return exactExpireTime - now;
+        return this.addCoolDown(this.store.getKeyId(key), coolDown, player);
+    }
+
+    public long getCoolDown(int keyId, Player player)
+    {
+        this.checkThreadID();
+        return this.store.getCoolDown(player.getUniqueId(), keyId, this.now(player));
+    }
+
+    public long setCoolDown(int keyId, long coolDown, Player player)
+    {
+        this.checkThreadID();
+        return this.store.setCoolDown(player.getUniqueId(), keyId, coolDown, this.now(player));
+    }
+
+    public long addCoolDown(int keyId, long coolDown, Player player)
+    {
+        this.checkThreadID();
+        return this.store.addCoolDown(player.getUniqueId(), keyId, coolDown, this.now(player));
+    }
+
+    public boolean isInCoolDown(int keyId, Player player)
+    {
+        return this.getCoolDown(keyId, player) > 0L;
     }
 
     private long now(Player player)
@@ -92,8 +117,16 @@ public class ElderGuardianCoolDownHelper implements CoolDownHelper
             long toExtentNow = toExtent.getProperties().getTotalTime();
             long timeDifference = toExtentNow - fromExtentNow;
 
-            Table<Player, String, Long> coolDownExpireTable = ElderGuardianCoolDownHelper.this.coolDownExpireTable;
-            coolDownExpireTable.row((Player) targetEntity).replaceAll((k, v) -> v + timeDifference);
+            ElderGuardianCoolDownHelper.this.store.shift(targetEntity.getUniqueId(), timeDifference);
+        }
+    }
+
+    private class Disconnect implements EventListener<ClientConnectionEvent.Disconnect>
+    {
+        @Override
+        public void handle(ClientConnectionEvent.Disconnect event) throws Exception
+        {
+            ElderGuardianCoolDownHelper.this.store.remove(event.getTargetEntity().getUniqueId());
         }
     }
 }
@@ -0,0 +1,98 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The store of cooldowns behind {@link ElderGuardianCoolDownHelper}.
+ * <p>
+ * Keys are interned as small integers, which are the indices of the expire times in a primitive array per player.
+ * Zero is used for absent cooldowns since it is never after the current time. Reading and writing a cooldown for
+ * an interned key allocates nothing unless the array of the player needs to grow. Only writes intern keys, so
+ * reading an unknown key does not grow the store.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+final class ElderGuardianCoolDownStore
+{
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private final Map<UUID, long[]> expireTimes = new HashMap<>();
+
+    /**
+     * Find the id of a key without interning it.
+     *
+     * @param key the key
+     * @return the id, or -1 if the key has never been written
+     */
+    int findKeyId(String key)
+    {
+        Integer keyId = this.keyIds.get(key);
+        return keyId == null ? -1 : keyId;
+    }
+
+    int getKeyId(String key)
+    {
+        Integer keyId = this.keyIds.get(key);
+        if (keyId == null) this.keyIds.put(key, keyId = this.keyIds.size());
+        return keyId;
+    }
+
+    long getCoolDown(UUID uuid, int keyId, long now)
+    {
+        if (keyId < 0) return 0;
+        long[] times = this.expireTimes.get(uuid);
+        if (times == null || keyId >= times.length) return 0;
+        return Math.max(times[keyId] - now, 0);
+    }
+
+    long setCoolDown(UUID uuid, int keyId, long coolDown, long now)
+    {
+        long[] times = this.getExpireTimes(uuid, keyId);
+        long previousCoolDown = Math.max(times[keyId] - now, 0);
+        times[keyId] = coolDown + now;
+        return previousCoolDown;
+    }
+
+    long addCoolDown(UUID uuid, int keyId, long coolDown, long now)
+    {
+        long[] times = this.getExpireTimes(uuid, keyId);
+        long previousCoolDown = Math.max(times[keyId] - now, 0);
+        times[keyId] = coolDown + previousCoolDown + now;
+        return previousCoolDown;
+    }
+
+    /**
+     * Shift all the expire times of a player, for example when the player is moved to a world with another time.
+     *
+     * @param uuid           the uuid of the player
+     * @param timeDifference the difference between the time of the new world and the old one
+     */
+    void shift(UUID uuid, long timeDifference)
+    {
+        long[] times = this.expireTimes.get(uuid);
+        if (times == null) return;
+        for (int i = 0; i < times.length; ++i) times[i] += timeDifference; // absent ones stay before the time
+    }
+
+    void remove(UUID uuid)
+    {
+        this.expireTimes.remove(uuid);
+    }
+
+    private long[] getExpireTimes(UUID uuid, int keyId)
+    {
+        long[] times = this.expireTimes.get(uuid);
+        if (times == null || keyId >= times.length)
+        {
+            long[] newTimes = new long[Math.max(keyId + 1, this.keyIds.size())];
+            if (times != null) System.arraycopy(times, 0, newTimes, 0, times.length);
+            this.expireTimes.put(uuid, times = newTimes);
+        }
+        return times;
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.flowpowered.math.GenericMath;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
+import com.google.common.collect.ImmutableList;
+import org.spongepowered.api.event.cause.entity.damage.DamageModifier;
+import org.spongepowered.api.event.entity.AttackEntityEvent;
+import org.spongepowered.api.event.entity.DamageEntityEvent;
+import org.spongepowered.api.util.Tuple;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A fused stage applying all the damage modifier stats to an event in one step, with the results of all the stats
+ * matched from one lore evaluation.
+ * <p>
+ * Base damage stats multiply the base damage, and special ones modify the first damage modifier of the type named
+ * by their results. The arithmetic is done in the same order as applying the stats one by one, so the damage is
+ * exactly the same as before.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianDamageStage
+{
+    private static final LoreStatAccessor MODIFIER_TYPE = LoreStatAccessor.of("modifier-type");
+    private static final LoreStatAccessor MODIFIER = LoreStatAccessor.of("modifier");
+    private static final LoreStatAccessor MODIFIER_PERCENT = LoreStatAccessor.of("modifier-percent");
+
+    private final Map<String, Entry> registeredStats = new HashMap<>();
+
+    private List<Entry> enabledStats = ImmutableList.of();
+
+    // reusable buffers of modifyDamageModifiers indexed by the special stats applied to the event
+    private Entry[] specialEntries = new Entry[0];
+    private BitSet[] appliedTypes = new BitSet[0]; // indices of the types already modified by each stat
+    private double[] modifiers = new double[0];
+    private String[] typeIds = new String[8]; // the types of damage modifiers seen in the event
+
+    /**
+     * Register a stat whose results are applied by this stage, which should be called before the stat is enabled.
+     *
+     * @param id         the stat id
+     * @param decreasing whether the stat decreases the damage
+     * @param special    whether the stat modifies damage modifiers of the specified type instead of the base damage
+     */
+    public void registerStat(String id, boolean decreasing, boolean special)
+    {
+        this.registeredStats.put(id, new Entry(id, decreasing, special));
+    }
+
+    void setEnabledStats(Collection<String> ids)
+    {
+        ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+        for (String id : ids)
+        {
+            Entry entry = this.registeredStats.get(id);
+            if (Objects.nonNull(entry)) builder.add(entry);
+        }
+        this.enabledStats = builder.build();
+
+        int size = this.enabledStats.size();
+        this.specialEntries = new Entry[size];
+        this.appliedTypes = new BitSet[size];
+        for (int i = 0; i < size; ++i) this.appliedTypes[i] = new BitSet();
+        this.modifiers = new double[size];
+    }
+
+    boolean isEnabled()
+    {
+        return !this.enabledStats.isEmpty();
+    }
+
+    void onAttackEntity(AttackEntityEvent event, Map<String, List<LoreMatchResult>> stats)
+    {
+        double baseDamage = event.getBaseOutputDamage();
+        double modifiedBaseDamage = this.modifyBaseDamage(baseDamage, stats);
+        if (modifiedBaseDamage != baseDamage) event.setBaseOutputDamage(modifiedBaseDamage);
+        this.modifyDamageModifiers(event.getModifiers(), stats, event::setOutputDamage);
+    }
+
+    void onDamageEntity(DamageEntityEvent event, Map<String, List<LoreMatchResult>> stats)
+    {
+        double baseDamage = event.getBaseDamage();
+        double modifiedBaseDamage = this.modifyBaseDamage(baseDamage, stats);
+        if (modifiedBaseDamage != baseDamage) event.setBaseDamage(modifiedBaseDamage);
+        this.modifyDamageModifiers(event.getModifiers(), stats, event::setDamage);
+    }
+
+    private double modifyBaseDamage(double baseDamage, Map<String, List<LoreMatchResult>> stats)
+    {
+        for (Entry entry : this.enabledStats)
+        {
+            List<LoreMatchResult> results = stats.get(entry.id);
+            if (entry.special || Objects.isNull(results) || results.isEmpty()) continue;
+
+            double modifier = 0;
+            for (LoreMatchResult data : results) modifier += getModifier(data);
+            baseDamage *= 1 + entry.clamp(modifier);
+        }
+        return baseDamage;
+    }
+
+    private void modifyDamageModifiers(List<Tuple<DamageModifier, Function<? super Double, Double>>> damageModifiers,
+                                       Map<String, List<LoreMatchResult>> stats,
+                                       BiConsumer<DamageModifier, Function<? super Double, Double>> setter)
+    {
+        // the buffers are sized when stats are enabled and reset here, so nothing is allocated unless applied
+        int entryCount = 0;
+        for (Entry entry : this.enabledStats)
+        {
+            List<LoreMatchResult> results = stats.get(entry.id);
+            if (!entry.special || Objects.isNull(results) || results.isEmpty()) continue;
+            this.appliedTypes[entryCount].clear();
+            this.specialEntries[entryCount++] = entry;
+        }
+        if (entryCount == 0) return;
+
+        // each stat modifies only the first damage modifier of each type
+        int typeCount = 0;
+        for (Tuple<DamageModifier, Function<? super Double, Double>> tuple : damageModifiers)
+        {
+            String type = tuple.getFirst().getType().getId();
+            int typeIndex = this.indexOfType(type, typeCount);
+            if (typeIndex == typeCount) ++typeCount;
+
+            int count = 0;
+            for (int i = 0; i < entryCount; ++i)
+            {
+                Entry entry = this.specialEntries[i];
+                if (this.appliedTypes[i].get(typeIndex)) continue;
+
+                double modifier = 0;
+                for (LoreMatchResult data : stats.get(entry.id))
+                {
+                    if (type.equals(getModifierType(data))) modifier += getModifier(data);
+                }
+                modifier = entry.clamp(modifier);
+                if (modifier > GenericMath.DBL_EPSILON || modifier < -GenericMath.DBL_EPSILON)
+                {
+                    this.appliedTypes[i].set(typeIndex);
+                    this.modifiers[count++] = modifier;
+                }
+            }
+            if (count > 0) setter.accept(tuple.getFirst(), modifiedFunction(tuple.getSecond(), this.modifiers, count));
+        }
+        Arrays.fill(this.specialEntries, 0, entryCount, null);
+        Arrays.fill(this.typeIds, 0, typeCount, null);
+    }
+
+    // the index of the type among the types seen in this event, or the count of them if it is a new one
+    private int indexOfType(String type, int typeCount)
+    {
+        for (int i = 0; i < typeCount; ++i)
+        {
+            if (type.equals(this.typeIds[i])) return i;
+        }
+        if (typeCount == this.typeIds.length) this.typeIds = Arrays.copyOf(this.typeIds, typeCount * 2);
+        this.typeIds[typeCount] = type;
+        return typeCount;
+    }
+
+    // the function is kept by the event, so it captures its own copy of the modifiers, or the only one of them
+    private static Function<? super Double, Double> modifiedFunction(Function<? super Double, Double> originalFunction,
+                                                                     double[] modifiers, int count)
+    {
+        if (count == 1)
+        {
+            double modifier = modifiers[0];
+            return v -> originalFunction.apply(v) * (1 + modifier) + v * modifier;
+        }
+        double[] appliedModifiers = Arrays.copyOf(modifiers, count);
+        return v ->
+        {
+            double damage = originalFunction.apply(v);
+            for (double modifier : appliedModifiers) damage = damage * (1 + modifier) + v * modifier;
+            return damage;
+        };
+    }
+
+    private static String getModifierType(LoreMatchResult data)
+    {
+        return data.getString(MODIFIER_TYPE, "");
+    }
+
+    private static double getModifier(LoreMatchResult data)
+    {
+        return data.getDouble(MODIFIER, data.getDouble(MODIFIER_PERCENT, 0.0) / 100);
+    }
+
+    private static final class Entry
+    {
+        private final String id;
+        private final boolean decreasing;
+        private final boolean special;
+
+        private Entry(String id, boolean decreasing, boolean special)
+        {
+            this.id = id;
+            this.decreasing = decreasing;
+            this.special = special;
+        }
+
+        // a decrease of d is applied as an increase of -d, which gives exactly the same floating point result
+        private double clamp(double modifier)
+        {
+            return this.decreasing ? -Math.min(1, modifier) : Math.max(-1, modifier);
+        }
+    }
+}
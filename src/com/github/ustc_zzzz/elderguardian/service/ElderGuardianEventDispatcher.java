@@ -0,0 +1,195 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatEventHandler;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.projectile.Projectile;
+import org.spongepowered.api.event.Event;
+import org.spongepowered.api.event.EventManager;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.action.CollideEvent;
+import org.spongepowered.api.event.cause.entity.damage.source.EntityDamageSource;
+import org.spongepowered.api.event.cause.entity.damage.source.IndirectEntityDamageSource;
+import org.spongepowered.api.event.entity.AttackEntityEvent;
+import org.spongepowered.api.event.entity.DamageEntityEvent;
+import org.spongepowered.api.event.item.inventory.InteractItemEvent;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Subscribes to each event type once for each order, and dispatches the events to the enabled stats implementing
+ * {@link LoreStatEventHandler}. The player and the stats of the item are resolved only once for all the stats, and
+ * stats without any result are skipped. Damage events are passed to the {@link ElderGuardianDamageStage} first.
+ * Events of players whose held items have none of the stats handled in the order are ignored before matching.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianEventDispatcher
+{
+    private static final List<Order> ORDERS = ImmutableList.of(Order.DEFAULT, Order.LAST);
+
+    private final ElderGuardianService service;
+    private final ElderGuardianDamageStage damageStage;
+
+    private Map<Order, Handlers> handlers = ImmutableMap.of();
+
+    ElderGuardianEventDispatcher(ElderGuardian plugin, ElderGuardianService service, ElderGuardianDamageStage damageStage)
+    {
+        this.service = service;
+        this.damageStage = damageStage;
+        EventManager eventManager = Sponge.getEventManager();
+        for (Order order : ORDERS)
+        {
+            // the damage stage runs in the default order, where the damage stats used to modify damage
+            boolean fused = order == Order.DEFAULT;
+            this.register(eventManager, plugin, AttackEntityEvent.class, order, fused,
+                    (e, h) -> this.onAttackEntity(e, h, fused));
+            this.register(eventManager, plugin, DamageEntityEvent.class, order, fused,
+                    (e, h) -> this.onDamageEntity(e, h, fused));
+            this.register(eventManager, plugin, CollideEvent.Impact.class, order, false, this::onCollideImpact);
+            this.register(eventManager, plugin, InteractItemEvent.Primary.class, order, false,
+                    this::onInteractItemPrimary);
+            this.register(eventManager, plugin, InteractItemEvent.Secondary.class, order, false,
+                    this::onInteractItemSecondary);
+        }
+    }
+
+    private <T extends Event> void register(EventManager eventManager, ElderGuardian plugin, Class<T> eventClass,
+                                            Order order, boolean fused,
+                                            BiConsumer<T, Handlers> listener)
+    {
+        eventManager.registerListener(plugin, eventClass, order, event ->
+        {
+            Handlers handlers = this.handlers.getOrDefault(order, Handlers.EMPTY);
+            if (!handlers.list.isEmpty() || fused && this.damageStage.isEnabled()) listener.accept(event, handlers);
+        });
+    }
+
+    void setHandlers(Collection<LoreStatEventHandler> handlers)
+    {
+        Map<Order, ImmutableList.Builder<LoreStatEventHandler>> builders = new EnumMap<>(Order.class);
+        for (LoreStatEventHandler handler : handlers)
+        {
+            Order order = ORDERS.contains(handler.getEventOrder()) ? handler.getEventOrder() : Order.DEFAULT;
+            builders.computeIfAbsent(order, k -> ImmutableList.builder()).add(handler);
+        }
+        ImmutableMap.Builder<Order, Handlers> builder = ImmutableMap.builder();
+        for (Map.Entry<Order, ImmutableList.Builder<LoreStatEventHandler>> entry : builders.entrySet())
+        {
+            List<LoreStatEventHandler> list = entry.getValue().build();
+            List<String> ids = Lists.transform(list, LoreStatEventHandler::getLoreStatId);
+            builder.put(entry.getKey(), new Handlers(list, this.service.getStatIndices(ids)));
+        }
+        this.handlers = builder.build();
+    }
+
+    private void onAttackEntity(AttackEntityEvent event, Handlers handlers, boolean fused)
+    {
+        Optional<EntityDamageSource> source = event.getCause().get(AttackEntityEvent.SOURCE, EntityDamageSource.class);
+        if (!source.isPresent()) return;
+
+        Entity sourceEntity = source.get().getSource();
+        if (!(sourceEntity instanceof Player)) return;
+
+        Player player = (Player) sourceEntity;
+        if (!this.service.mayHaveHeldItemStats(player, handlers.indices)) return;
+
+        Map<String, List<LoreMatchResult>> stats = this.service.getHeldItemStats(player);
+        if (fused && !stats.isEmpty()) this.damageStage.onAttackEntity(event, stats);
+        this.dispatch(handlers, stats, (h, s) -> h.onAttackEntity(event, player, s));
+    }
+
+    private void onDamageEntity(DamageEntityEvent event, Handlers handlers, boolean fused)
+    {
+        Optional<EntityDamageSource> source = event.getCause().get(DamageEntityEvent.SOURCE, EntityDamageSource.class);
+        if (!source.isPresent()) return;
+
+        Entity sourceEntity = source.get().getSource();
+        if (sourceEntity instanceof Player && this.service.mayHaveHeldItemStats((Player) sourceEntity, handlers.indices))
+        {
+            Player player = (Player) sourceEntity;
+            this.dispatch(handlers, this.service.getHeldItemStats(player),
+                    (h, s) -> h.onDamageEntity(event, player, s));
+        }
+
+        if (!(source.get() instanceof IndirectEntityDamageSource)) return;
+
+        Entity indirectSourceEntity = ((IndirectEntityDamageSource) source.get()).getIndirectSource();
+        if (indirectSourceEntity instanceof Player
+                && this.service.mayHaveHeldItemStats((Player) indirectSourceEntity, handlers.indices))
+        {
+            Player player = (Player) indirectSourceEntity;
+            Map<String, List<LoreMatchResult>> stats = this.service.getHeldItemStats(player);
+            if (fused && !stats.isEmpty()) this.damageStage.onDamageEntity(event, stats);
+            this.dispatch(handlers, stats, (h, s) -> h.onDamageEntityIndirectly(event, player, s));
+        }
+    }
+
+    private void onCollideImpact(CollideEvent.Impact event, Handlers handlers)
+    {
+        Object root = event.getCause().root();
+        if (!(root instanceof Projectile)) return;
+
+        Projectile projectile = (Projectile) root;
+        this.dispatch(handlers, this.service.getProjectileStats(projectile),
+                (h, s) -> h.onCollideImpact(event, projectile, s));
+    }
+
+    private void onInteractItemPrimary(InteractItemEvent.Primary event, Handlers handlers)
+    {
+        Optional<Player> playerOptional = event.getCause().first(Player.class);
+        if (!playerOptional.isPresent()) return;
+
+        Player player = playerOptional.get();
+        LoreMatcherContext context = this.service.getContextBy(player, event.getItemStack());
+        this.dispatch(handlers, this.service.matchAllResultsByHeldItem(context),
+                (h, s) -> h.onInteractItemPrimary(event, player, s));
+    }
+
+    private void onInteractItemSecondary(InteractItemEvent.Secondary event, Handlers handlers)
+    {
+        Optional<Player> playerOptional = event.getCause().first(Player.class);
+        if (!playerOptional.isPresent()) return;
+
+        Player player = playerOptional.get();
+        if (!this.service.mayHaveHeldItemStats(player, handlers.indices)) return;
+
+        this.dispatch(handlers, this.service.getHeldItemStats(player),
+                (h, s) -> h.onInteractItemSecondary(event, player, s));
+    }
+
+    private void dispatch(Handlers handlers, Map<String, List<LoreMatchResult>> stats,
+                          BiConsumer<LoreStatEventHandler, List<LoreMatchResult>> action)
+    {
+        if (stats.isEmpty()) return;
+        for (LoreStatEventHandler handler : handlers.list)
+        {
+            List<LoreMatchResult> results = stats.get(handler.getLoreStatId());
+            if (Objects.nonNull(results) && !results.isEmpty()) action.accept(handler, results);
+        }
+    }
+
+    private static final class Handlers
+    {
+        private static final Handlers EMPTY = new Handlers(ImmutableList.of(), new BitSet());
+
+        private final List<LoreStatEventHandler> list;
+        private final BitSet indices; // the indices of the stats handled
+
+        private Handlers(List<LoreStatEventHandler> list, BitSet indices)
+        {
+            this.list = list;
+            this.indices = indices;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.google.common.collect.ImmutableList;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.data.key.Keys;
+import org.spongepowered.api.data.type.HandTypes;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.EventListener;
+import org.spongepowered.api.event.item.inventory.ChangeInventoryEvent;
+import org.spongepowered.api.event.item.inventory.DropItemEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.item.ItemType;
+import org.spongepowered.api.item.ItemTypes;
+import org.spongepowered.api.item.inventory.ItemStack;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Per-player snapshots of the stats of held items.
+ * <p>
+ * A snapshot is invalidated when an inventory change, a pickup, or a drop touches the player. Since such events
+ * are fired before the change is applied, a snapshot is never recorded in the same tick as its invalidation.
+ * Changes without any event (e.g. a broken tool, or another plugin replacing the item in hand) are caught by the
+ * held item recorded with the snapshot, whose type and lore are compared with the current ones on every read.
+ * Snapshots also expire after a short while, which is configured and could be disabled.
+ * </p>
+ * <p>
+ * A bitset of the stats present on the held item is also kept per player, so that listeners and tasks could return
+ * before matching anything if none of the stats they need is present. The bitset is recorded, reset and expired
+ * together with the snapshot, and a negative answer is only given after the held item is compared with the one
+ * recorded with the bitset, since it makes callers skip the stats.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public class ElderGuardianHeldItemSnapshots
+{
+    public static final int DEFAULT_REFRESH_TICKS = 200;
+
+    private final long currentThreadID;
+    private final ElderGuardianService service;
+    private final ElderGuardianActiveHolders activeHolders;
+    private final Map<UUID, Snapshot> snapshots = new HashMap<>();
+    private final Map<UUID, Presence> presences = new HashMap<>();
+
+    private int refreshTicks = DEFAULT_REFRESH_TICKS; // zero if snapshots never expire
+
+    ElderGuardianHeldItemSnapshots(ElderGuardian plugin, ElderGuardianService service,
+                                   ElderGuardianActiveHolders activeHolders)
+    {
+        this.service = service;
+        this.activeHolders = activeHolders;
+        this.currentThreadID = Thread.currentThread().getId();
+        Sponge.getEventManager().registerListener(plugin, ChangeInventoryEvent.class, new ChangeInventory());
+        Sponge.getEventManager().registerListener(plugin, DropItemEvent.Dispense.class, new DropItem());
+        Sponge.getEventManager().registerListener(plugin, ClientConnectionEvent.Disconnect.class, new Disconnect());
+    }
+
+    public Map<String, List<LoreMatchResult>> get(Player player)
+    {
+        if (!this.isMainThread()) return this.service.matchAllResultsByHeldItem(player);
+
+        UUID uuid = player.getUniqueId();
+        HeldItem heldItem = HeldItem.of(player);
+        int now = Sponge.getServer().getRunningTimeTicks();
+        long generation = this.service.getGeneration();
+
+        Snapshot snapshot = this.snapshots.get(uuid);
+        boolean valid = Objects.nonNull(snapshot) && snapshot.isValid(now, generation, this.refreshTicks, heldItem);
+        if (valid) return snapshot.stats;
+
+        Map<String, List<LoreMatchResult>> stats = this.service.matchAllResultsByHeldItem(player);
+        if (Objects.isNull(snapshot) || snapshot.tick != now || !snapshot.isInvalidated())
+        {
+            this.snapshots.put(uuid, new Snapshot(now, generation, heldItem, stats));
+            BitSet indices = this.service.getStatIndices(stats.keySet());
+            this.presences.put(uuid, new Presence(now, generation, heldItem, indices));
+        }
+        return stats;
+    }
+
+    /**
+     * Check whether the held item of a player may have any of the stats without matching anything.
+     *
+     * @param player  the player
+     * @param indices the indices of the stats, see {@link ElderGuardianService#getStatIndices(Collection)}
+     * @return false if none of the stats is present for sure
+     */
+    public boolean mayHaveAny(Player player, BitSet indices)
+    {
+        Presence presence = this.getValidPresence(player);
+        if (Objects.isNull(presence) || presence.indices.intersects(indices)) return true;
+        return !presence.heldItem.isSameAs(HeldItem.of(player));
+    }
+
+    /**
+     * Check whether the held item of a player may have the stat without matching anything.
+     *
+     * @param player the player
+     * @param index  the index of the stat, see {@link ElderGuardianService#getStatIndices(Collection)}
+     * @return false if the stat is not present for sure
+     */
+    public boolean mayHave(Player player, int index)
+    {
+        Presence presence = this.getValidPresence(player);
+        if (Objects.isNull(presence) || presence.indices.get(index)) return true;
+        return !presence.heldItem.isSameAs(HeldItem.of(player));
+    }
+
+    @Nullable
+    private Presence getValidPresence(Player player)
+    {
+        if (!this.isMainThread()) return null;
+        Presence presence = this.presences.get(player.getUniqueId());
+        if (Objects.isNull(presence)) return null;
+
+        int now = Sponge.getServer().getRunningTimeTicks();
+        return presence.isValid(now, this.service.getGeneration(), this.refreshTicks) ? presence : null;
+    }
+
+    /**
+     * Set how long a snapshot is trusted without any event invalidating it.
+     *
+     * @param refreshTicks the ticks after which snapshots expire, or zero if they never expire
+     */
+    public void setRefreshTicks(int refreshTicks)
+    {
+        this.refreshTicks = Math.max(0, refreshTicks);
+    }
+
+    public int getRefreshTicks()
+    {
+        return this.refreshTicks;
+    }
+
+    public void invalidate(Player player)
+    {
+        if (!this.isMainThread()) return;
+        int now = Sponge.getServer().getRunningTimeTicks();
+        this.snapshots.put(player.getUniqueId(), new Snapshot(now, this.service.getGeneration(), HeldItem.NONE, null));
+        this.presences.remove(player.getUniqueId());
+        this.activeHolders.invalidate(player);
+    }
+
+    public void invalidateAll()
+    {
+        this.snapshots.clear();
+        this.presences.clear();
+        this.activeHolders.invalidateAll();
+    }
+
+    private boolean isMainThread()
+    {
+        return this.currentThreadID == Thread.currentThread().getId();
+    }
+
+    private static final class HeldItem
+    {
+        private static final HeldItem NONE = new HeldItem(ItemTypes.NONE, ImmutableList.of());
+
+        private final ItemType type;
+        private final List<Text> lore;
+
+        private HeldItem(ItemType type, List<Text> lore)
+        {
+            this.type = type;
+            this.lore = lore;
+        }
+
+        // the same hand as the one matched by the context of the player
+        private static HeldItem of(Player player)
+        {
+            Optional<ItemStack> stackOptional = player.getItemInHand(HandTypes.MAIN_HAND);
+            if (!stackOptional.isPresent()) stackOptional = player.getItemInHand(HandTypes.OFF_HAND);
+            if (!stackOptional.isPresent()) return NONE;
+
+            ItemStack stack = stackOptional.get();
+            return new HeldItem(stack.getItem(), stack.get(Keys.ITEM_LORE).orElse(ImmutableList.of()));
+        }
+
+        private boolean isSameAs(HeldItem that)
+        {
+            return this == that || this.type.equals(that.type) && this.lore.equals(that.lore);
+        }
+    }
+
+    private static final class Snapshot
+    {
+        private final int tick;
+        private final long generation;
+        private final HeldItem heldItem;
+        @Nullable
+        private final Map<String, List<LoreMatchResult>> stats; // null if invalidated
+
+        private Snapshot(int tick, long generation, HeldItem heldItem,
+                         @Nullable Map<String, List<LoreMatchResult>> stats)
+        {
+            this.tick = tick;
+            this.generation = generation;
+            this.heldItem = heldItem;
+            this.stats = stats;
+        }
+
+        private boolean isInvalidated()
+        {
+            return Objects.isNull(this.stats);
+        }
+
+        private boolean isValid(int now, long generation, int refreshTicks, HeldItem heldItem)
+        {
+            if (this.isInvalidated() || this.generation != generation) return false;
+            return (refreshTicks <= 0 || now - this.tick < refreshTicks) && this.heldItem.isSameAs(heldItem);
+        }
+    }
+
+    private static final class Presence
+    {
+        private final int tick;
+        private final long generation;
+        private final HeldItem heldItem;
+        private final BitSet indices;
+
+        private Presence(int tick, long generation, HeldItem heldItem, BitSet indices)
+        {
+            this.tick = tick;
+            this.generation = generation;
+            this.heldItem = heldItem;
+            this.indices = indices;
+        }
+
+        private boolean isValid(int now, long generation, int refreshTicks)
+        {
+            return this.generation == generation && (refreshTicks <= 0 || now - this.tick < refreshTicks);
+        }
+    }
+
+    private class ChangeInventory implements EventListener<ChangeInventoryEvent>
+    {
+        @Override
+        public void handle(ChangeInventoryEvent event) throws Exception
+        {
+            event.getCause().first(Player.class).ifPresent(ElderGuardianHeldItemSnapshots.this::invalidate);
+        }
+    }
+
+    private class DropItem implements EventListener<DropItemEvent.Dispense>
+    {
+        @Override
+        public void handle(DropItemEvent.Dispense event) throws Exception
+        {
+            event.getCause().first(Player.class).ifPresent(ElderGuardianHeldItemSnapshots.this::invalidate);
+        }
+    }
+
+    private class Disconnect implements EventListener<ClientConnectionEvent.Disconnect>
+    {
+        @Override
+        public void handle(ClientConnectionEvent.Disconnect event) throws Exception
+        {
+            ElderGuardianHeldItemSnapshots.this.snapshots.remove(event.getTargetEntity().getUniqueId());
+            ElderGuardianHeldItemSnapshots.this.presences.remove(event.getTargetEntity().getUniqueId());
+        }
+    }
+}
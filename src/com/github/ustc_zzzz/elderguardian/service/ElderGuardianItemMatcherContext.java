@@ -0,0 +1,58 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
+import com.google.common.collect.ImmutableList;
+import org.spongepowered.api.data.key.Keys;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.item.inventory.ItemStackSnapshot;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The context of an item without any holder. The lore is read, serialized and rendered as plain text when the
+ * context is created, so matching the context on other threads only reads immutable strings.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public class ElderGuardianItemMatcherContext implements LoreMatcherContext
+{
+    private final List<Text> lore;
+    private final List<String> serializedLore;
+    private final List<String> plainLore;
+
+    ElderGuardianItemMatcherContext(ItemStackSnapshot stackSnapshot)
+    {
+        this.lore = ImmutableList.copyOf(stackSnapshot.get(Keys.ITEM_LORE).orElse(ImmutableList.of()));
+        this.serializedLore = ElderGuardianHelper.serializeLore(this.lore);
+        this.plainLore = ElderGuardianHelper.plainLore(this.lore);
+    }
+
+    @Override
+    public Optional<Player> getPlayer()
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public List<Text> getHeldItemLore()
+    {
+        return this.lore;
+    }
+
+    @Override
+    public List<String> getSerializedHeldItemLore()
+    {
+        return this.serializedLore;
+    }
+
+    @Override
+    public List<String> getPlainHeldItemLore()
+    {
+        return this.plainLore;
+    }
+}
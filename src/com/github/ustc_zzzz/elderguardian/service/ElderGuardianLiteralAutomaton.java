@@ -0,0 +1,246 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreTemplate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton built from the literal parts of all the registered lore templates.
+ * <p>
+ * A serialized lore line is scanned only once, and the result contains all the (stat, matcher, template)
+ * candidates whose non-empty literal parts all occur in the line. Other templates could never match the line.
+ * Templates of matchers in plain text mode require no literals, since they are matched against other texts.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianLiteralAutomaton
+{
+    public static final ElderGuardianLiteralAutomaton EMPTY = new ElderGuardianLiteralAutomaton(ImmutableMap.of());
+
+    private final Map<String, List<LoreMatcher>> matchers;
+    private final Map<String, int[][]> candidateIndices; // stat id -> matcher index -> template index -> candidate
+    private final List<Candidate> candidates;
+    private final int[][] requiredLiterals; // candidate -> literal ids
+
+    private final int literalCount;
+    private final char[][] edgeChars; // sorted for binary search
+    private final int[][] edgeTargets;
+    private final int[] failures;
+    private final int[] dictionaryLinks; // the nearest state on the failure chain which has an output, or the root
+    private final int[] outputs; // literal id, or -1
+
+    public ElderGuardianLiteralAutomaton(Map<String, ? extends List<LoreMatcher>> matchers)
+    {
+        ImmutableMap.Builder<String, List<LoreMatcher>> matchersBuilder = ImmutableMap.builder();
+        ImmutableList.Builder<Candidate> candidatesBuilder = ImmutableList.builder();
+        Map<String, int[][]> candidateIndices = new HashMap<>();
+        Map<String, Integer> literalIds = new LinkedHashMap<>();
+        List<int[]> requiredLiterals = new ArrayList<>();
+
+        for (Map.Entry<String, ? extends List<LoreMatcher>> entry : matchers.entrySet())
+        {
+            String id = entry.getKey();
+            List<LoreMatcher> list = ImmutableList.copyOf(entry.getValue());
+            int[][] indices = new int[list.size()][];
+            for (int i = 0; i < indices.length; ++i)
+            {
+                LoreMatcher matcher = list.get(i);
+                List<LoreTemplate> templates = matcher.getLoreTemplates();
+                indices[i] = new int[templates.size()];
+                for (int j = 0; j < indices[i].length; ++j)
+                {
+                    LoreTemplate template = templates.get(j);
+                    Set<Integer> required = new LinkedHashSet<>();
+                    for (String literal : template.getTemplateLiterals())
+                    {
+                        if (literal.isEmpty() || matcher.isPlainText()) continue;
+                        Integer literalId = literalIds.get(literal);
+                        if (literalId == null) literalIds.put(literal, literalId = literalIds.size());
+                        required.add(literalId);
+                    }
+                    indices[i][j] = requiredLiterals.size();
+                    requiredLiterals.add(required.stream().mapToInt(Integer::intValue).toArray());
+                    candidatesBuilder.add(new Candidate(id, matcher, template));
+                }
+            }
+            matchersBuilder.put(id, list);
+            candidateIndices.put(id, indices);
+        }
+
+        this.matchers = matchersBuilder.build();
+        this.candidates = candidatesBuilder.build();
+        this.candidateIndices = candidateIndices;
+        this.requiredLiterals = requiredLiterals.toArray(new int[0][]);
+        this.literalCount = literalIds.size();
+
+        // build the trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(-1);
+        for (Map.Entry<String, Integer> entry : literalIds.entrySet())
+        {
+            int state = 0;
+            for (char c : entry.getKey().toCharArray())
+            {
+                Integer next = trie.get(state).get(c);
+                if (next == null)
+                {
+                    trie.get(state).put(c, next = trie.size());
+                    trie.add(new TreeMap<>());
+                    outputs.add(-1);
+                }
+                state = next;
+            }
+            outputs.set(state, entry.getValue());
+        }
+
+        int stateCount = trie.size();
+        this.edgeChars = new char[stateCount][];
+        this.edgeTargets = new int[stateCount][];
+        this.failures = new int[stateCount];
+        this.dictionaryLinks = new int[stateCount];
+        this.outputs = new int[stateCount];
+        for (int state = 0; state < stateCount; ++state)
+        {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            this.edgeChars[state] = new char[edges.size()];
+            this.edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet())
+            {
+                this.edgeChars[state][i] = edge.getKey();
+                this.edgeTargets[state][i++] = edge.getValue();
+            }
+            this.outputs[state] = outputs.get(state);
+        }
+
+        // build failure links and dictionary links in breadth first order
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : this.edgeTargets[0]) queue.add(child);
+        while (!queue.isEmpty())
+        {
+            int state = queue.poll();
+            for (int i = 0; i < this.edgeChars[state].length; ++i)
+            {
+                char c = this.edgeChars[state][i];
+                int child = this.edgeTargets[state][i], failure = this.failures[state], next;
+                while ((next = this.transit(failure, c)) < 0 && failure > 0) failure = this.failures[failure];
+                this.failures[child] = Math.max(next, 0);
+                int f = this.failures[child];
+                this.dictionaryLinks[child] = this.outputs[f] >= 0 ? f : this.dictionaryLinks[f];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int transit(int state, char c)
+    {
+        int index = Arrays.binarySearch(this.edgeChars[state], c);
+        return index < 0 ? -1 : this.edgeTargets[state][index];
+    }
+
+    public List<LoreMatcher> getLoreMatchers(String id)
+    {
+        return this.matchers.getOrDefault(id, ImmutableList.of());
+    }
+
+    public Collection<String> getAvailableLoreMatchers()
+    {
+        return this.matchers.keySet();
+    }
+
+    public Candidate getCandidate(int index)
+    {
+        return this.candidates.get(index);
+    }
+
+    /**
+     * Scan a serialized lore line once.
+     *
+     * @param line the serialized lore line
+     * @return the indices of all the candidates whose required literals occur in the line
+     */
+    public BitSet scan(String line)
+    {
+        int state = 0, next;
+        boolean[] found = new boolean[this.literalCount];
+        for (int i = 0, length = line.length(); i < length; ++i)
+        {
+            char c = line.charAt(i);
+            while ((next = this.transit(state, c)) < 0 && state > 0) state = this.failures[state];
+            state = Math.max(next, 0);
+            for (int o = this.outputs[state] >= 0 ? state : this.dictionaryLinks[state]; o > 0; o = this.dictionaryLinks[o])
+            {
+                found[this.outputs[o]] = true;
+            }
+        }
+        BitSet result = new BitSet(this.requiredLiterals.length);
+        outer:
+        for (int i = 0; i < this.requiredLiterals.length; ++i)
+        {
+            for (int literalId : this.requiredLiterals[i]) if (!found[literalId]) continue outer;
+            result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * Check if all the templates of a matcher are candidates of successive lines starting from an offset.
+     *
+     * @param id           the stat id
+     * @param matcherIndex the index of the matcher in {@link #getLoreMatchers(String)}
+     * @param scannedLines the results of {@link #scan(String)} for each lore line
+     * @return false if the matcher could never match the lore
+     */
+    public boolean isPossible(String id, int matcherIndex, List<BitSet> scannedLines)
+    {
+        int[][] matcherIndices = this.candidateIndices.get(id);
+        if (Objects.isNull(matcherIndices)) return false;
+        int[] indices = matcherIndices[matcherIndex];
+        int maxOffsetAvailable = scannedLines.size() - indices.length;
+        outer:
+        for (int offset = 0; offset <= maxOffsetAvailable; ++offset)
+        {
+            for (int j = 0; j < indices.length; ++j) if (!scannedLines.get(offset + j).get(indices[j])) continue outer;
+            return true;
+        }
+        return false;
+    }
+
+    @NonnullByDefault
+    public static final class Candidate
+    {
+        private final String id;
+        private final LoreMatcher matcher;
+        private final LoreTemplate template;
+
+        private Candidate(String id, LoreMatcher matcher, LoreTemplate template)
+        {
+            this.id = id;
+            this.matcher = matcher;
+            this.template = template;
+        }
+
+        public String getLoreStatId()
+        {
+            return this.id;
+        }
+
+        public LoreMatcher getLoreMatcher()
+        {
+            return this.matcher;
+        }
+
+        public LoreTemplate getLoreTemplate()
+        {
+            return this.template;
+        }
+    }
+}
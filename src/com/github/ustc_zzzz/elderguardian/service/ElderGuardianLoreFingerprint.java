@@ -0,0 +1,66 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+
+/**
+ * A cheap fingerprint of a lore, which consists of a murmur3 hash of the serialized lines and the line count.
+ * <p>
+ * A fingerprint is computed from the lore already serialized by the context, so no text is serialized or hashed
+ * deeply again. Fingerprints with the same hash and size are also compared by their lines, so a hash collision
+ * would never make two different lores equal.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianLoreFingerprint
+{
+    private final long hash;
+    private final int size;
+    private final List<String> lore;
+
+    /**
+     * Compute the fingerprint of a lore.
+     *
+     * @param serializedLore the lore serialized by formatting codes
+     * @return the fingerprint
+     */
+    public static ElderGuardianLoreFingerprint of(List<String> serializedLore)
+    {
+        return new ElderGuardianLoreFingerprint(ImmutableList.copyOf(serializedLore));
+    }
+
+    private ElderGuardianLoreFingerprint(List<String> lore)
+    {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String line : lore) hasher.putInt(line.length()).putUnencodedChars(line);
+        this.lore = lore;
+        this.size = lore.size();
+        this.hash = hasher.putInt(this.size).hash().asLong();
+    }
+
+    public List<String> getLore()
+    {
+        return this.lore;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (this.hash ^ this.hash >>> 32);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof ElderGuardianLoreFingerprint)) return false;
+        ElderGuardianLoreFingerprint that = (ElderGuardianLoreFingerprint) obj;
+        return this.hash == that.hash && this.size == that.size && this.lore.equals(that.lore);
+    }
+}
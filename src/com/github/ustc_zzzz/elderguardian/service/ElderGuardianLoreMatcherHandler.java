@@ -1,19 +1,26 @@
 package com.github.ustc_zzzz.elderguardian.service;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreEdit;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchPresets;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchSteps;
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcherHandler;
 import com.github.ustc_zzzz.elderguardian.api.LoreStatPresetsHandler;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
 import ninja.leaping.configurate.loader.ConfigurationLoader;
 import ninja.leaping.configurate.objectmapping.ObjectMappingException;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.data.MemoryDataContainer;
 import org.spongepowered.api.item.inventory.ItemStack;
 import org.spongepowered.api.item.inventory.ItemStackSnapshot;
@@ -23,6 +30,8 @@ import org.spongepowered.api.util.annotation.NonnullByDefault;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author ustc_zzzz
@@ -31,10 +40,13 @@ import java.util.*;
 public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, LoreStatPresetsHandler
 {
     private final ElderGuardian plugin;
+    private final ElderGuardianMatchBudget matchBudget;
     private final Map<String, ItemStack> storedStacks = new TreeMap<>();
     private final Map<String, TreeMap<String, String>> presets = new TreeMap<>();
     private final Map<String, LinkedList<LoreMatcher>> matchers = new TreeMap<>();
 
+    private volatile ElderGuardianLoreSnapshot snapshot = ElderGuardianLoreSnapshot.EMPTY;
+
     private boolean dirty = false;
     private String filePathString = "data.conf";
     private ConfigurationLoader<CommentedConfigurationNode> loader;
@@ -42,6 +54,7 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
     public ElderGuardianLoreMatcherHandler(ElderGuardian plugin)
     {
         this.plugin = plugin;
+        this.matchBudget = new ElderGuardianMatchBudget(plugin);
         this.loader = HoconConfigurationLoader.builder().build();
         Sponge.getScheduler().createTaskBuilder().intervalTicks(2).execute(this::saveIfDirty).submit(plugin);
     }
@@ -49,19 +62,20 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
     @Override
     public Collection<String> getAvailableLoreMatchers()
     {
-        return ImmutableSet.copyOf(this.matchers.keySet());
+        return this.snapshot.getAvailableLoreMatchers();
     }
 
     @Override
     public List<LoreMatcher> getLoreMatchers(String id)
     {
-        return this.matchers.containsKey(id) ? ImmutableList.copyOf(this.matchers.get(id)) : ImmutableList.of();
+        return this.snapshot.getLoreMatchers(id);
     }
 
     @Override
     public void clearLoreMatchers(String id)
     {
         this.matchers.remove(id);
+        this.publishSnapshot();
         this.dirty = true;
     }
 
@@ -69,25 +83,210 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
     public void addLoreMatcher(String id, LoreMatcher loreMatcher)
     {
         this.matchers.computeIfAbsent(id, k -> new LinkedList<>()).add(loreMatcher);
+        this.publishSnapshot();
         this.dirty = true;
     }
 
+    @Override
+    public List<DataContainer> matchLoreByHeldItem(String id, LoreMatcherContext context, DataContainer presets)
+    {
+        ElderGuardianLiteralAutomaton automaton = this.snapshot.getLiteralAutomaton();
+        if (automaton.getLoreMatchers(id).isEmpty()) return ImmutableList.of();
+
+        List<String> lores = context.getSerializedHeldItemLore();
+        List<BitSet> scannedLines = this.scanLores(automaton, lores);
+        ElderGuardianLoreFingerprint fingerprint = ElderGuardianLoreFingerprint.of(lores);
+        List<LoreMatchResult> results = this.matchScannedLores(automaton, id, lores, scannedLines, context,
+                fingerprint, () -> LoreMatchPresets.of(presets));
+        return LoreMatchResult.toContainers(results);
+    }
+
+    @Override
+    public Map<String, List<DataContainer>> matchAllLoresByHeldItem(Collection<String> ids, LoreMatcherContext context,
+                                                                    Function<? super String, ? extends DataContainer> presets)
+    {
+        Map<String, List<LoreMatchResult>> results = this.matchAllResults(ids, context, id -> LoreMatchPresets.of(presets.apply(id)));
+        return ImmutableMap.copyOf(Maps.transformValues(results, LoreMatchResult::toContainers));
+    }
+
+    @Override
+    public Map<String, List<LoreMatchResult>> matchAllResultsByHeldItem(Collection<String> ids, LoreMatcherContext context,
+                                                                        Function<? super String, ? extends DataView> presets)
+    {
+        return this.matchAllResults(ids, context, id -> LoreMatchPresets.of(presets.apply(id)));
+    }
+
+    protected Map<String, List<LoreMatchResult>> matchAllResults(Collection<String> ids, LoreMatcherContext context,
+                                                                 Function<? super String, LoreMatchPresets> presets)
+    {
+        return this.matchAllResults(this.snapshot.getLiteralAutomaton(), ids, context, presets);
+    }
+
+    protected Map<String, List<LoreMatchResult>> matchAllResults(ElderGuardianLiteralAutomaton automaton,
+                                                                 Collection<String> ids, LoreMatcherContext context,
+                                                                 Function<? super String, LoreMatchPresets> presets)
+    {
+        List<String> lores = context.getSerializedHeldItemLore();
+        if (lores.isEmpty()) return ImmutableMap.of();
+        return this.matchAllResults(automaton, ids, context, ElderGuardianLoreFingerprint.of(lores), presets);
+    }
+
+    // only reads the automaton and the compiled presets, so it is safe to be called from other threads
+    // the fingerprint of the lore is computed once by the caller, and shared by the cache and the budget
+    protected Map<String, List<LoreMatchResult>> matchAllResults(ElderGuardianLiteralAutomaton automaton,
+                                                                 Collection<String> ids, LoreMatcherContext context,
+                                                                 ElderGuardianLoreFingerprint fingerprint,
+                                                                 Function<? super String, LoreMatchPresets> presets)
+    {
+        List<String> lores = context.getSerializedHeldItemLore();
+        if (lores.isEmpty()) return ImmutableMap.of();
+
+        List<BitSet> scannedLines = this.scanLores(automaton, lores);
+        ImmutableMap.Builder<String, List<LoreMatchResult>> builder = ImmutableMap.builder();
+        for (String id : ImmutableSet.copyOf(ids))
+        {
+            List<LoreMatchResult> results = this.matchScannedLores(automaton, id, lores, scannedLines, context,
+                    fingerprint, () -> presets.apply(id));
+            if (!results.isEmpty()) builder.put(id, results);
+        }
+        return builder.build();
+    }
+
+    // previous results of each stat are reused by every matcher, and only the edited windows are matched again
+    protected Map<String, List<LoreMatchResult>> rematchAllResults(ElderGuardianLiteralAutomaton automaton,
+                                                                   Collection<String> ids, LoreMatcherContext context,
+                                                                   Function<? super String, LoreMatchPresets> presets,
+                                                                   Map<String, List<LoreMatchResult>> previous, LoreEdit edit)
+    {
+        List<String> lores = context.getSerializedHeldItemLore();
+        if (lores.isEmpty()) return ImmutableMap.of();
+
+        ImmutableMap.Builder<String, List<LoreMatchResult>> builder = ImmutableMap.builder();
+        for (String id : ImmutableSet.copyOf(ids))
+        {
+            List<LoreMatcher> matchers = automaton.getLoreMatchers(id);
+            if (matchers.isEmpty()) continue;
+
+            LoreMatchPresets p = presets.apply(id);
+            List<LoreMatchResult> previousResults = previous.getOrDefault(id, ImmutableList.of());
+            ImmutableList.Builder<LoreMatchResult> resultsBuilder = ImmutableList.builder();
+            for (LoreMatcher matcher : matchers)
+            {
+                List<String> renderedLores = matcher.getRenderedLore(context);
+                resultsBuilder.addAll(matcher.rematchSerialized(renderedLores, context, p, previousResults, edit));
+            }
+            List<LoreMatchResult> results = resultsBuilder.build();
+            if (!results.isEmpty()) builder.put(id, results);
+        }
+        return builder.build();
+    }
+
+    private List<BitSet> scanLores(ElderGuardianLiteralAutomaton automaton, List<String> lores)
+    {
+        List<BitSet> scannedLines = new ArrayList<>(lores.size());
+        for (String lore : lores) scannedLines.add(automaton.scan(lore));
+        return scannedLines;
+    }
+
+    private List<LoreMatchResult> matchScannedLores(ElderGuardianLiteralAutomaton automaton, String id, List<String> lores,
+                                                    List<BitSet> scannedLines, LoreMatcherContext context,
+                                                    ElderGuardianLoreFingerprint fingerprint,
+                                                    Supplier<LoreMatchPresets> presetsSupplier)
+    {
+        List<LoreMatcher> matchers = automaton.getLoreMatchers(id);
+        List<LoreMatcher> possibleMatchers = new ArrayList<>(matchers.size());
+        for (int i = 0; i < matchers.size(); ++i)
+        {
+            if (automaton.isPossible(id, i, scannedLines)) possibleMatchers.add(matchers.get(i));
+        }
+        if (possibleMatchers.isEmpty()) return ImmutableList.of();
+        if (this.matchBudget.isQuarantined(automaton, fingerprint, id)) return ImmutableList.of();
+
+        // the steps are shared by all the matchers of the stat, and matching is aborted once they are exhausted
+        long start = System.nanoTime();
+        LoreMatchSteps steps = this.matchBudget.newSteps();
+        LoreMatchPresets presets = presetsSupplier.get();
+        ImmutableList.Builder<LoreMatchResult> builder = ImmutableList.builder();
+        for (LoreMatcher matcher : possibleMatchers)
+        {
+            builder.addAll(matcher.matchSerialized(matcher.getRenderedLore(context), context, presets, steps));
+            if (!this.matchBudget.checkSteps(automaton, fingerprint, id, steps)) return ImmutableList.of();
+        }
+        this.matchBudget.recordTime(automaton, fingerprint, id, System.nanoTime() - start);
+        return builder.build();
+    }
+
+    public ElderGuardianMatchBudget getMatchBudget()
+    {
+        return this.matchBudget;
+    }
+
+    /**
+     * Fetch the presets of a stat compiled once for the current generation, so that they could be shared by all
+     * the results matched with them.
+     *
+     * @param id the stat id
+     * @return the compiled presets
+     */
+    public LoreMatchPresets getCompiledLoreStatPresets(String id)
+    {
+        return this.snapshot.getCompiledLoreStatPresets(id);
+    }
+
+    public ElderGuardianLiteralAutomaton getLiteralAutomaton()
+    {
+        return this.snapshot.getLiteralAutomaton();
+    }
+
+    /**
+     * The generation is increased on any change of matchers or presets, so results cached for an older generation
+     * should be discarded.
+     *
+     * @return the current generation
+     */
+    public long getGeneration()
+    {
+        return this.snapshot.getGeneration();
+    }
+
+    /**
+     * Fetch the snapshot of all the matchers and presets, which is never copied and never changed. A new snapshot
+     * with a greater generation is published on any change.
+     *
+     * @return the current snapshot
+     */
+    public ElderGuardianLoreSnapshot getSnapshot()
+    {
+        return this.snapshot;
+    }
+
+    private void publishSnapshot()
+    {
+        this.snapshot = new ElderGuardianLoreSnapshot(this.snapshot.getGeneration() + 1, this.matchers, this.presets);
+    }
+
+    private void publishPresetsSnapshot()
+    {
+        this.snapshot = this.snapshot.withPresets(this.presets);
+    }
+
     @Override
     public Collection<String> getAvailableLoreStatPresets()
     {
-        return ImmutableSet.copyOf(this.presets.keySet());
+        return this.snapshot.getAvailableLoreStatPresets();
     }
 
     @Override
     public Map<String, String> getLoreStatPresets(String id)
     {
-        return this.presets.containsKey(id) ? ImmutableMap.copyOf(this.presets.get(id)) : ImmutableMap.of();
+        return this.snapshot.getLoreStatPresets(id);
     }
 
     @Override
     public void clearLoreStatPresets(String id)
     {
         this.presets.remove(id);
+        this.publishPresetsSnapshot();
         this.dirty = true;
     }
 
@@ -101,12 +300,14 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
                 TreeMap<String, String> map = this.presets.get(id);
                 map.remove(presetKey);
                 if (map.isEmpty()) this.presets.remove(id);
+                this.publishPresetsSnapshot();
                 this.dirty = true;
             }
         }
         else
         {
             this.presets.computeIfAbsent(id, k -> new TreeMap<>()).put(presetKey, presetValue);
+            this.publishPresetsSnapshot();
             this.dirty = true;
         }
     }
@@ -233,6 +434,7 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
                     d.set(LoreMatcher.CLOSE_ARG, child.getNode("close-arg").getString(LoreMatcher.DEFAULT_CLOSE_ARG));
                     d.set(LoreMatcher.OPEN_ARG, child.getNode("open-arg").getString(LoreMatcher.DEFAULT_OPEN_ARG));
                     d.set(LoreMatcher.TEMPLATES, templateStrings);
+                    if (child.getNode("plain-text").getBoolean(false)) d.set(LoreMatcher.PLAIN_TEXT, true);
                     matchers.add(LoreMatcher.fromContainer(d));
                 }
             }
@@ -247,6 +449,7 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
             if (!matchers.isEmpty()) this.matchers.put(key, matchers);
             if (!presets.isEmpty()) this.presets.put(key, presets);
         }
+        this.publishSnapshot();
     }
 
     private void saveLoreConfig(CommentedConfigurationNode node)
@@ -262,6 +465,7 @@ public class ElderGuardianLoreMatcherHandler implements LoreMatcherHandler, Lore
                 CommentedConfigurationNode child = childrenNodeList.getAppendedNode();
                 child.getNode("close-arg").setValue(matcher.getCloseArg());
                 child.getNode("open-arg").setValue(matcher.getOpenArg());
+                if (matcher.isPlainText()) child.getNode("plain-text").setValue(true);
                 this.setTemplateStrings(child, matcher.getTemplates());
             }
         }
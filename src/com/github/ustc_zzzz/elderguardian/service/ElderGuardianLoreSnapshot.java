@@ -0,0 +1,106 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchPresets;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of all the matchers and presets, which is rebuilt only when they are changed.
+ * <p>
+ * Readers share the same instance without any copying, and the generation of the snapshot could be used to
+ * validate caches built from it. Since the snapshot is immutable, it is also safe to be read from other threads.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianLoreSnapshot
+{
+    public static final ElderGuardianLoreSnapshot EMPTY = new ElderGuardianLoreSnapshot(0,
+            ElderGuardianLiteralAutomaton.EMPTY, ImmutableMap.of(), ImmutableMap.of());
+
+    private final long generation;
+    private final ElderGuardianLiteralAutomaton literalAutomaton;
+    private final Map<String, Map<String, String>> presets;
+    private final Map<String, LoreMatchPresets> compiledPresets;
+
+    ElderGuardianLoreSnapshot(long generation, Map<String, ? extends List<LoreMatcher>> matchers,
+                              Map<String, ? extends Map<String, String>> presets)
+    {
+        this(generation, new ElderGuardianLiteralAutomaton(matchers), presets);
+    }
+
+    ElderGuardianLoreSnapshot(long generation, ElderGuardianLiteralAutomaton literalAutomaton,
+                              Map<String, ? extends Map<String, String>> presets)
+    {
+        ImmutableMap.Builder<String, Map<String, String>> presetsBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<String, LoreMatchPresets> compiledPresetsBuilder = ImmutableMap.builder();
+        for (Map.Entry<String, ? extends Map<String, String>> entry : presets.entrySet())
+        {
+            DataContainer container = new MemoryDataContainer();
+            for (Map.Entry<String, String> e : entry.getValue().entrySet()) container.set(DataQuery.of(e.getKey()), e.getValue());
+            presetsBuilder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+            compiledPresetsBuilder.put(entry.getKey(), LoreMatchPresets.compile(container));
+        }
+
+        this.generation = generation;
+        this.literalAutomaton = literalAutomaton;
+        this.presets = presetsBuilder.build();
+        this.compiledPresets = compiledPresetsBuilder.build();
+    }
+
+    /**
+     * Create the snapshot of the next generation where only presets are changed, so that the literal automaton
+     * could be reused.
+     *
+     * @param presets the new presets
+     * @return the new snapshot
+     */
+    ElderGuardianLoreSnapshot withPresets(Map<String, ? extends Map<String, String>> presets)
+    {
+        return new ElderGuardianLoreSnapshot(this.generation + 1, this.literalAutomaton, presets);
+    }
+
+    public long getGeneration()
+    {
+        return this.generation;
+    }
+
+    public ElderGuardianLiteralAutomaton getLiteralAutomaton()
+    {
+        return this.literalAutomaton;
+    }
+
+    public Collection<String> getAvailableLoreMatchers()
+    {
+        return this.literalAutomaton.getAvailableLoreMatchers();
+    }
+
+    public List<LoreMatcher> getLoreMatchers(String id)
+    {
+        return this.literalAutomaton.getLoreMatchers(id);
+    }
+
+    public Collection<String> getAvailableLoreStatPresets()
+    {
+        return this.presets.keySet();
+    }
+
+    public Map<String, String> getLoreStatPresets(String id)
+    {
+        return this.presets.getOrDefault(id, ImmutableMap.of());
+    }
+
+    public LoreMatchPresets getCompiledLoreStatPresets(String id)
+    {
+        return this.compiledPresets.getOrDefault(id, LoreMatchPresets.EMPTY);
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchSteps;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The budget of matching the lore of an item against a stat, which prevents lores crafted to be expensive to match
+ * from lagging the server.
+ * <p>
+ * The steps of a stat are counted by the matching engine, which aborts once the maximum is exhausted, and the lore
+ * is quarantined for the stat, which means it is treated as having no results of the stat until the matchers change.
+ * The time is measured after matching, and since a single slow run may be caused by anything else on the server,
+ * a lore is only quarantined after it exceeds the time limit several times. Each quarantined lore is logged once.
+ * Zero disables the corresponding limit.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianMatchBudget
+{
+    private static final long DEFAULT_MAXIMUM_STEPS = 1 << 20;
+    private static final long DEFAULT_MAXIMUM_MICROS = 10000;
+    private static final int DEFAULT_SLOW_RUNS_TO_QUARANTINE = 3;
+    private static final int MAXIMUM_SLOW_LORES = 1024; // slow runs are forgotten when too many lores are tracked
+
+    private final ElderGuardian plugin;
+    private final LongAdder quarantinedCount = new LongAdder();
+    private final ConcurrentMap<ElderGuardianLoreFingerprint, Set<String>> quarantined = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ElderGuardianLoreFingerprint, Multiset<String>> slowRuns = new ConcurrentHashMap<>();
+
+    private volatile Object quarantinedFor = new Object(); // the literal automaton which is rebuilt on any change of matchers
+
+    private long maximumSteps = DEFAULT_MAXIMUM_STEPS;
+    private long maximumNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_MAXIMUM_MICROS);
+    private int slowRunsToQuarantine = DEFAULT_SLOW_RUNS_TO_QUARANTINE;
+
+    ElderGuardianMatchBudget(ElderGuardian plugin)
+    {
+        this.plugin = plugin;
+    }
+
+    boolean isQuarantined(ElderGuardianLiteralAutomaton automaton, ElderGuardianLoreFingerprint fingerprint, String id)
+    {
+        if (this.quarantined.isEmpty() || this.quarantinedFor != automaton) return false;
+        Set<String> ids = this.quarantined.get(fingerprint);
+        return ids != null && ids.contains(id);
+    }
+
+    LoreMatchSteps newSteps()
+    {
+        return this.maximumSteps <= 0 ? LoreMatchSteps.unlimited() : LoreMatchSteps.of(this.maximumSteps);
+    }
+
+    boolean checkSteps(ElderGuardianLiteralAutomaton automaton, ElderGuardianLoreFingerprint fingerprint, String id,
+                       LoreMatchSteps steps)
+    {
+        if (!steps.isExhausted()) return true;
+        this.quarantine(automaton, fingerprint, id, "more than " + steps.getMaximum() + " steps");
+        return false;
+    }
+
+    void recordTime(ElderGuardianLiteralAutomaton automaton, ElderGuardianLoreFingerprint fingerprint, String id,
+                    long nanos)
+    {
+        if (this.maximumNanos <= 0 || nanos <= this.maximumNanos) return;
+        this.resetIfChanged(automaton);
+        if (this.slowRuns.size() >= MAXIMUM_SLOW_LORES) this.slowRuns.clear();
+
+        Multiset<String> ids = this.slowRuns.computeIfAbsent(fingerprint, k -> ConcurrentHashMultiset.create());
+        if (ids.add(id, 1) + 1 < this.slowRunsToQuarantine) return;
+
+        String cost = TimeUnit.NANOSECONDS.toMicros(nanos) + " microseconds for " + this.slowRunsToQuarantine + " times";
+        this.quarantine(automaton, fingerprint, id, cost);
+    }
+
+    private synchronized void resetIfChanged(ElderGuardianLiteralAutomaton automaton)
+    {
+        if (this.quarantinedFor != automaton)
+        {
+            this.quarantined.clear();
+            this.slowRuns.clear();
+            this.quarantinedFor = automaton;
+        }
+    }
+
+    private void quarantine(ElderGuardianLiteralAutomaton automaton, ElderGuardianLoreFingerprint fingerprint, String id,
+                            String cost)
+    {
+        this.resetIfChanged(automaton);
+        List<String> lore = fingerprint.getLore();
+        if (this.quarantined.computeIfAbsent(fingerprint, k -> Sets.newConcurrentHashSet()).add(id))
+        {
+            this.quarantinedCount.increment();
+            String msg = "Quarantined a lore for stat " + id + " since matching it costs " + cost + ": " + lore;
+            this.plugin.getLogger().warn(msg);
+        }
+    }
+
+    /**
+     * Get how many lores have been quarantined for a stat since the server started, in which a lore quarantined for
+     * many stats is counted for each of them.
+     *
+     * @return the count of quarantined lores
+     */
+    public long getQuarantinedCount()
+    {
+        return this.quarantinedCount.sum();
+    }
+
+    public void loadConfig(CommentedConfigurationNode node)
+    {
+        this.maximumSteps = node.getNode("maximum-steps").getLong(DEFAULT_MAXIMUM_STEPS);
+        this.maximumNanos = TimeUnit.MICROSECONDS.toNanos(node.getNode("maximum-micros").getLong(DEFAULT_MAXIMUM_MICROS));
+        this.slowRunsToQuarantine = Math.max(1, node.getNode("slow-runs-to-quarantine").getInt(DEFAULT_SLOW_RUNS_TO_QUARANTINE));
+        this.quarantined.clear();
+        this.slowRuns.clear();
+    }
+
+    public void saveConfig(CommentedConfigurationNode node)
+    {
+        node.getNode("maximum-steps").setValue(this.maximumSteps);
+        node.getNode("maximum-micros").setValue(TimeUnit.NANOSECONDS.toMicros(this.maximumNanos));
+        node.getNode("slow-runs-to-quarantine").setValue(this.slowRunsToQuarantine);
+    }
+}
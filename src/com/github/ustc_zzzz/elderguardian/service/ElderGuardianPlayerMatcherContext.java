@@ -1,6 +1,7 @@
 package com.github.ustc_zzzz.elderguardian.service;
 
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.data.key.Keys;
 import org.spongepowered.api.data.type.HandTypes;
@@ -10,17 +11,28 @@ import org.spongepowered.api.item.inventory.ItemStackSnapshot;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
+import javax.annotation.Nullable;
 import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
+ * The context of the item held by a player. The lore is read when it is first accessed, and then it stays the same
+ * for the context, so a context should not be kept after the item changes.
+ *
  * @author ustc_zzzz
  */
 @NonnullByDefault
 public class ElderGuardianPlayerMatcherContext implements LoreMatcherContext
 {
     private final ItemStackSnapshot itemStackSnapshot;
+    @Nullable
+    private List<Text> lore; // null if not read yet
+    @Nullable
+    private List<String> serializedLore; // null if not rendered yet
+    @Nullable
+    private List<String> plainLore; // null if not rendered yet
     private final WeakReference<Player> playerWeakReference;
 
     ElderGuardianPlayerMatcherContext(Player player)
@@ -43,6 +55,12 @@ public class ElderGuardianPlayerMatcherContext implements LoreMatcherContext
 
     @Override
     public List<Text> getHeldItemLore()
+    {
+        if (Objects.isNull(this.lore)) this.lore = this.readHeldItemLore();
+        return this.lore;
+    }
+
+    private List<Text> readHeldItemLore()
     {
         if (this.itemStackSnapshot == ItemStackSnapshot.NONE)
         {
@@ -61,4 +79,20 @@ public class ElderGuardianPlayerMatcherContext implements LoreMatcherContext
             return itemStackSnapshot.get(Keys.ITEM_LORE).orElse(ImmutableList.of());
         }
     }
+
+    @Override
+    public List<String> getSerializedHeldItemLore()
+    {
+        List<Text> lore = this.getHeldItemLore();
+        if (Objects.isNull(this.serializedLore)) this.serializedLore = ElderGuardianHelper.serializeLore(lore);
+        return this.serializedLore;
+    }
+
+    @Override
+    public List<String> getPlainHeldItemLore()
+    {
+        List<Text> lore = this.getHeldItemLore();
+        if (Objects.isNull(this.plainLore)) this.plainLore = ElderGuardianHelper.plainLore(lore);
+        return this.plainLore;
+    }
 }
@@ -1,6 +1,7 @@
 package com.github.ustc_zzzz.elderguardian.service;
 
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.data.key.Keys;
 import org.spongepowered.api.entity.living.player.Player;
@@ -9,17 +10,26 @@ import org.spongepowered.api.entity.projectile.source.ProjectileSource;
 import org.spongepowered.api.item.inventory.ItemStackSnapshot;
 import org.spongepowered.api.text.Text;
 
+import javax.annotation.Nullable;
 import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
 /**
+ * The context of the item which fired a projectile. The lore is read when it is first accessed.
+ *
  * @author ustc_zzzz
  */
 public class ElderGuardianProjectileMatcherContext implements LoreMatcherContext
 {
     private final ItemStackSnapshot itemStackSnapshot;
+    @Nullable
+    private List<Text> lore; // null if not read yet
+    @Nullable
+    private List<String> serializedLore; // null if not rendered yet
+    @Nullable
+    private List<String> plainLore; // null if not rendered yet
     private final WeakReference<Projectile> projectileWeakReference;
 
     ElderGuardianProjectileMatcherContext(Projectile projectile)
@@ -49,6 +59,23 @@ public class ElderGuardianProjectileMatcherContext implements LoreMatcherContext
     @Override
     public List<Text> getHeldItemLore()
     {
-        return this.itemStackSnapshot.get(Keys.ITEM_LORE).orElse(ImmutableList.of());
+        if (Objects.isNull(this.lore)) this.lore = this.itemStackSnapshot.get(Keys.ITEM_LORE).orElse(ImmutableList.of());
+        return this.lore;
+    }
+
+    @Override
+    public List<String> getSerializedHeldItemLore()
+    {
+        List<Text> lore = this.getHeldItemLore();
+        if (Objects.isNull(this.serializedLore)) this.serializedLore = ElderGuardianHelper.serializeLore(lore);
+        return this.serializedLore;
+    }
+
+    @Override
+    public List<String> getPlainHeldItemLore()
+    {
+        List<Text> lore = this.getHeldItemLore();
+        if (Objects.isNull(this.plainLore)) this.plainLore = ElderGuardianHelper.plainLore(lore);
+        return this.plainLore;
     }
 }
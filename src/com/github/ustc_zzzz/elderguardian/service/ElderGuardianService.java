@@ -1,10 +1,24 @@
 package com.github.ustc_zzzz.elderguardian.service;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreEdit;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
 import com.github.ustc_zzzz.elderguardian.api.LoreStat;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatEventHandler;
 import com.github.ustc_zzzz.elderguardian.api.LoreStatService;
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.data.type.HandTypes;
 import org.spongepowered.api.entity.Entity;
@@ -13,9 +27,17 @@ import org.spongepowered.api.entity.projectile.Projectile;
 import org.spongepowered.api.event.entity.SpawnEntityEvent;
 import org.spongepowered.api.item.inventory.ItemStack;
 import org.spongepowered.api.item.inventory.ItemStackSnapshot;
+import org.spongepowered.api.text.Text;
 import org.spongepowered.api.util.annotation.NonnullByDefault;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ustc_zzzz
@@ -23,15 +45,38 @@ import java.util.*;
 @NonnullByDefault
 public class ElderGuardianService extends ElderGuardianLoreMatcherHandler implements LoreStatService
 {
+    private static final long DEFAULT_CACHE_MAXIMUM_SIZE = 4096;
+    private static final long DEFAULT_CACHE_EXPIRE_AFTER_ACCESS = 600; // seconds
+    private static final int MATCH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
     private final ElderGuardianCoolDownHelper coolDownHelper;
+    private final ElderGuardianActiveHolders activeHolders;
+    private final ElderGuardianDamageStage damageStage;
+    private final ElderGuardianEventDispatcher eventDispatcher;
+    private final ElderGuardianHeldItemSnapshots heldItemSnapshots;
     private final Map<String, LoreStat> stats = new HashMap<>();
+    private final Map<String, Integer> statIndices = new ConcurrentHashMap<>();
     private final Set<String> enabledStats = new LinkedHashSet<>();
     private final Map<Projectile, ItemStack> stacks = new WeakHashMap<>();
+    private final ExecutorService matchExecutor = Executors.newFixedThreadPool(MATCH_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("elderguardian-match-%d").setDaemon(true).build());
+
+    private long cacheMaximumSize = DEFAULT_CACHE_MAXIMUM_SIZE;
+    private long cacheExpireAfterAccess = DEFAULT_CACHE_EXPIRE_AFTER_ACCESS;
+    private Cache<ElderGuardianLoreFingerprint, CachedStats> cachedStats = this.buildCache();
+
+    private boolean stampItems = false;
+    private long stampGeneration = 0;
+    private long stampGenerationComputedFor = -1;
 
     public ElderGuardianService(ElderGuardian plugin)
     {
         super(plugin);
         this.coolDownHelper = new ElderGuardianCoolDownHelper(plugin);
+        this.activeHolders = new ElderGuardianActiveHolders(plugin, this);
+        this.heldItemSnapshots = new ElderGuardianHeldItemSnapshots(plugin, this, this.activeHolders);
+        this.damageStage = new ElderGuardianDamageStage();
+        this.eventDispatcher = new ElderGuardianEventDispatcher(plugin, this, this.damageStage);
         Sponge.getServiceManager().setProvider(plugin, LoreStatService.class, this);
         Sponge.getEventManager().registerListener(plugin, SpawnEntityEvent.class, this::onSpawnEntity);
     }
@@ -79,12 +124,300 @@ public class ElderGuardianService extends ElderGuardianLoreMatcherHandler implem
         return new ElderGuardianPlayerMatcherContext(stack, player);
     }
 
+    @Override
+    public LoreMatcherContext getContextBy(ItemStackSnapshot stack)
+    {
+        return new ElderGuardianItemMatcherContext(stack);
+    }
+
+    /**
+     * Match the lore of a context against every enabled stat. Results are cached by the fingerprint of the lore,
+     * so the returned results are shared between contexts providing the same lore.
+     *
+     * @param context the context providing the lore
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    @Override
+    public Map<String, List<LoreMatchResult>> matchAllResultsByHeldItem(LoreMatcherContext context)
+    {
+        ElderGuardianLoreSnapshot snapshot = this.getSnapshot();
+        return this.matchAllResultsCached(snapshot, this.enabledStats, context);
+    }
+
+    /**
+     * Match the lore of a context after an edit. If the results of the lore before the edit are still cached, only
+     * the windows overlapping the edited lines are matched again, and other results are reused.
+     *
+     * @param previousLore the lore before the edit
+     * @param edit         the edit which turns the previous lore into the lore of the context
+     * @param context      the context providing the lore after the edit
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    public Map<String, List<LoreMatchResult>> rematchAllResultsByHeldItem(List<Text> previousLore, LoreEdit edit,
+                                                                          LoreMatcherContext context)
+    {
+        List<String> lore = context.getSerializedHeldItemLore();
+        if (lore.isEmpty()) return ImmutableMap.of();
+
+        ElderGuardianLoreSnapshot snapshot = this.getSnapshot();
+        Map<String, List<LoreMatchResult>> previousStats = ImmutableMap.of(); // an empty lore never matches
+        if (!previousLore.isEmpty())
+        {
+            List<String> serializedPreviousLore = ElderGuardianHelper.serializeLore(previousLore);
+            CachedStats cached = this.cachedStats.getIfPresent(ElderGuardianLoreFingerprint.of(serializedPreviousLore));
+            if (cached == null || cached.generation != snapshot.getGeneration()) return this.matchAllResultsByHeldItem(context);
+            previousStats = cached.stats;
+        }
+
+        Map<String, List<LoreMatchResult>> stats = this.rematchAllResults(snapshot.getLiteralAutomaton(), this.enabledStats,
+                context, snapshot::getCompiledLoreStatPresets, previousStats, edit);
+        this.cachedStats.put(ElderGuardianLoreFingerprint.of(lore), new CachedStats(snapshot.getGeneration(), stats));
+        return stats;
+    }
+
+    /**
+     * Match the lores of many items against every enabled stat. Lores are read, serialized, rendered and
+     * fingerprinted on the caller thread, and only the string matching runs in parallel on a dedicated executor,
+     * which is safe since matchers are immutable.
+     *
+     * @param stacks the items
+     * @return an immutable list of the results of each item, in the same order as the items
+     */
+    @Override
+    public List<Map<String, List<LoreMatchResult>>> matchAllResultsByItems(Collection<ItemStackSnapshot> stacks)
+    {
+        List<String> ids = ImmutableList.copyOf(this.enabledStats);
+        ElderGuardianLoreSnapshot snapshot = this.getSnapshot();
+
+        List<Callable<Map<String, List<LoreMatchResult>>>> tasks = new ArrayList<>(stacks.size());
+        for (ItemStackSnapshot stack : stacks)
+        {
+            LoreMatcherContext context = this.getContextBy(stack);
+            List<String> lore = context.getSerializedHeldItemLore();
+            if (lore.isEmpty())
+            {
+                tasks.add(ImmutableMap::of); // an empty lore never matches
+                continue;
+            }
+            ElderGuardianLoreFingerprint fingerprint = ElderGuardianLoreFingerprint.of(lore);
+            tasks.add(() -> this.matchAllResultsCached(snapshot, ids, context, fingerprint));
+        }
+
+        try
+        {
+            ImmutableList.Builder<Map<String, List<LoreMatchResult>>> builder = ImmutableList.builder();
+            for (Future<Map<String, List<LoreMatchResult>>> future : this.matchExecutor.invokeAll(tasks))
+            {
+                builder.add(future.get());
+            }
+            return builder.build();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Map<String, List<LoreMatchResult>> matchAllResultsCached(ElderGuardianLoreSnapshot snapshot,
+                                                                     Collection<String> ids, LoreMatcherContext context)
+    {
+        List<String> lore = context.getSerializedHeldItemLore();
+        if (lore.isEmpty()) return ImmutableMap.of();
+        return this.matchAllResultsCached(snapshot, ids, context, ElderGuardianLoreFingerprint.of(lore));
+    }
+
+    private Map<String, List<LoreMatchResult>> matchAllResultsCached(ElderGuardianLoreSnapshot snapshot,
+                                                                     Collection<String> ids, LoreMatcherContext context,
+                                                                     ElderGuardianLoreFingerprint fingerprint)
+    {
+        long generation = snapshot.getGeneration();
+        CachedStats cached = this.cachedStats.getIfPresent(fingerprint);
+        if (cached != null && cached.generation == generation) return cached.stats;
+
+        Map<String, List<LoreMatchResult>> stats = this.matchAllResults(snapshot.getLiteralAutomaton(), ids, context,
+                fingerprint, snapshot::getCompiledLoreStatPresets);
+        this.cachedStats.put(fingerprint, new CachedStats(generation, stats));
+        return stats;
+    }
+
+    /**
+     * Get the stats of the held item of a player. The result is a snapshot maintained per player, which is
+     * recomputed only after the inventory of the player changes.
+     *
+     * @param player the player
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    public Map<String, List<LoreMatchResult>> getHeldItemStats(Player player)
+    {
+        return this.heldItemSnapshots.get(player);
+    }
+
+    /**
+     * Check whether the held item of a player may have a stat, which is answered by a bitset maintained per player
+     * without matching anything. Callers could skip {@link #getHeldItemStats(Player)} if false is returned.
+     *
+     * @param player the player
+     * @param id     the stat id
+     * @return false if the stat is not present on the held item for sure
+     */
+    public boolean mayHaveHeldItemStat(Player player, String id)
+    {
+        return this.heldItemSnapshots.mayHave(player, this.getStatIndex(id));
+    }
+
+    /**
+     * Check whether the held item of a player may have any of the stats, see {@link #mayHaveHeldItemStat}.
+     *
+     * @param player  the player
+     * @param indices the indices of the stats
+     * @return false if none of the stats is present on the held item for sure
+     */
+    public boolean mayHaveHeldItemStats(Player player, BitSet indices)
+    {
+        return this.heldItemSnapshots.mayHaveAny(player, indices);
+    }
+
+    /**
+     * Get the indices of stats in bitsets, which are assigned on first use and never change.
+     *
+     * @param ids the stat ids
+     * @return a new bitset in which the indices of the stats are set
+     */
+    public BitSet getStatIndices(Collection<String> ids)
+    {
+        BitSet indices = new BitSet();
+        for (String id : ids) indices.set(this.getStatIndex(id));
+        return indices;
+    }
+
+    private int getStatIndex(String id)
+    {
+        Integer index = this.statIndices.get(id);
+        if (Objects.nonNull(index)) return index;
+        synchronized (this.statIndices)
+        {
+            return this.statIndices.computeIfAbsent(id, k -> this.statIndices.size());
+        }
+    }
+
+    /**
+     * Match the held item of a player. If stamps are enabled, a valid stamp on the item is trusted, otherwise the
+     * lore is parsed. Nothing is written to the item here, since stamps are only written when lores are applied.
+     *
+     * @param player the player
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    Map<String, List<LoreMatchResult>> matchAllResultsByHeldItem(Player player)
+    {
+        if (this.stampItems)
+        {
+            Optional<ItemStack> stackOptional = player.getItemInHand(HandTypes.MAIN_HAND);
+            if (!stackOptional.isPresent()) stackOptional = player.getItemInHand(HandTypes.OFF_HAND);
+            if (!stackOptional.isPresent()) return ImmutableMap.of();
+
+            long stampGeneration = this.getStampGeneration();
+            Optional<Map<String, List<LoreMatchResult>>> stamped = ElderGuardianStatStamps.read(stackOptional.get(),
+                    stampGeneration);
+            if (stamped.isPresent()) return stamped.get();
+        }
+        return this.matchAllResultsByHeldItem(this.getContextBy(player));
+    }
+
+    /**
+     * Get the stats of the item which fired a projectile, where a valid stamp on the item is trusted if stamps are
+     * enabled.
+     *
+     * @param projectile the projectile
+     * @return an immutable map from stat ids to the results, in which stat ids without results are absent
+     */
+    public Map<String, List<LoreMatchResult>> getProjectileStats(Projectile projectile)
+    {
+        ItemStack stack = this.stacks.get(projectile);
+        if (this.stampItems && Objects.nonNull(stack))
+        {
+            Optional<Map<String, List<LoreMatchResult>>> stamped = ElderGuardianStatStamps.read(stack, this.getStampGeneration());
+            if (stamped.isPresent()) return stamped.get();
+        }
+        return this.matchAllResultsByHeldItem(this.getContextBy(projectile));
+    }
+
+    /**
+     * Write the stats into the custom data of an item if stamps are enabled, for example after lores are applied.
+     *
+     * @param stack the item
+     * @param stats the stats matched from the current lore of the item
+     */
+    public void stampItemStats(ItemStack stack, Map<String, List<LoreMatchResult>> stats)
+    {
+        if (this.stampItems) ElderGuardianStatStamps.write(stack, this.getStampGeneration(), stats);
+    }
+
+    /**
+     * Unlike {@link #getGeneration()}, the stamp generation is a hash of all the matchers, presets and enabled
+     * stats, so it stays the same after the server restarts.
+     *
+     * @return the current stamp generation
+     */
+    public long getStampGeneration()
+    {
+        long generation = this.getGeneration();
+        if (this.stampGenerationComputedFor != generation)
+        {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            for (String id : new TreeSet<>(this.enabledStats))
+            {
+                hasher.putUnencodedChars(id).putByte((byte) 0);
+                for (LoreMatcher matcher : this.getLoreMatchers(id))
+                {
+                    hasher.putUnencodedChars(matcher.getOpenArg()).putByte((byte) 1);
+                    hasher.putUnencodedChars(matcher.getCloseArg()).putByte((byte) 1);
+                    hasher.putBoolean(matcher.isPlainText()).putByte((byte) 1);
+                    for (String template : matcher.getTemplates()) hasher.putUnencodedChars(template).putByte((byte) 1);
+                }
+                for (Map.Entry<String, String> entry : this.getLoreStatPresets(id).entrySet())
+                {
+                    hasher.putUnencodedChars(entry.getKey()).putByte((byte) 2);
+                    hasher.putUnencodedChars(entry.getValue()).putByte((byte) 3);
+                }
+            }
+            this.stampGeneration = hasher.hash().asLong();
+            this.stampGenerationComputedFor = generation;
+        }
+        return this.stampGeneration;
+    }
+
+    /**
+     * Notify that the held item of a player has been changed without any inventory event.
+     *
+     * @param player the player
+     */
+    public void invalidateHeldItemStats(Player player)
+    {
+        this.heldItemSnapshots.invalidate(player);
+    }
+
     @Override
     public ElderGuardianCoolDownHelper getCoolDownHelper()
     {
         return this.coolDownHelper;
     }
 
+    @Override
+    public List<Player> getActiveHolders(String id)
+    {
+        return this.activeHolders.get(id);
+    }
+
+    public ElderGuardianDamageStage getDamageStage()
+    {
+        return this.damageStage;
+    }
+
     @Override
     public Collection<String> getAvailableStats()
     {
@@ -104,8 +437,36 @@ public class ElderGuardianService extends ElderGuardianLoreMatcherHandler implem
         }
     }
 
+    public void loadCacheConfig(CommentedConfigurationNode node)
+    {
+        this.cacheMaximumSize = node.getNode("maximum-size").getLong(DEFAULT_CACHE_MAXIMUM_SIZE);
+        this.cacheExpireAfterAccess = node.getNode("expire-after-access-seconds")
+                .getLong(DEFAULT_CACHE_EXPIRE_AFTER_ACCESS);
+        this.stampItems = node.getNode("stamp-items").getBoolean(false);
+        this.heldItemSnapshots.setRefreshTicks(node.getNode("held-item-refresh-ticks")
+                .getInt(ElderGuardianHeldItemSnapshots.DEFAULT_REFRESH_TICKS));
+        this.cachedStats = this.buildCache();
+    }
+
+    public void saveCacheConfig(CommentedConfigurationNode node)
+    {
+        node.getNode("maximum-size").setValue(this.cacheMaximumSize);
+        node.getNode("expire-after-access-seconds").setValue(this.cacheExpireAfterAccess);
+        node.getNode("stamp-items").setValue(this.stampItems);
+        node.getNode("held-item-refresh-ticks").setValue(this.heldItemSnapshots.getRefreshTicks());
+    }
+
+    private Cache<ElderGuardianLoreFingerprint, CachedStats> buildCache()
+    {
+        return CacheBuilder.newBuilder().maximumSize(this.cacheMaximumSize)
+                .expireAfterAccess(this.cacheExpireAfterAccess, TimeUnit.SECONDS).build();
+    }
+
     public void enableStats(Set<String> enabledStats)
     {
+        this.stampGenerationComputedFor = -1;
+        this.cachedStats.invalidateAll();
+        this.heldItemSnapshots.invalidateAll();
         for (String id : enabledStats)
         {
             if (!this.enabledStats.contains(id))
@@ -114,10 +475,21 @@ public class ElderGuardianService extends ElderGuardianLoreMatcherHandler implem
                 if (this.stats.containsKey(id)) this.stats.get(id).onLoreStatEnable();
             }
         }
+        List<LoreStatEventHandler> handlers = new ArrayList<>();
+        for (String id : this.enabledStats)
+        {
+            LoreStat stat = this.stats.get(id);
+            if (stat instanceof LoreStatEventHandler) handlers.add((LoreStatEventHandler) stat);
+        }
+        this.eventDispatcher.setHandlers(handlers);
+        this.damageStage.setEnabledStats(this.enabledStats);
     }
 
     public Set<String> disableStats()
     {
+        this.stampGenerationComputedFor = -1;
+        this.cachedStats.invalidateAll();
+        this.heldItemSnapshots.invalidateAll();
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
         for (String id : this.enabledStats)
         {
@@ -125,6 +497,20 @@ public class ElderGuardianService extends ElderGuardianLoreMatcherHandler implem
             if (this.stats.containsKey(id)) this.stats.get(id).onLoreStatDisable();
         }
         this.enabledStats.clear();
+        this.eventDispatcher.setHandlers(ImmutableList.of());
+        this.damageStage.setEnabledStats(ImmutableList.of());
         return builder.build();
     }
+
+    private static final class CachedStats
+    {
+        private final long generation;
+        private final Map<String, List<LoreMatchResult>> stats;
+
+        private CachedStats(long generation, Map<String, List<LoreMatchResult>> stats)
+        {
+            this.generation = generation;
+            this.stats = stats;
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package com.github.ustc_zzzz.elderguardian.service;
+
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.unsafe.SpongeUnimplemented;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.item.inventory.ItemStack;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compact binary stamps of the matched stats, which are written into the custom data of items.
+ * <p>
+ * A stamp consists of the values of all the results and the stamp generation it was computed against. It is
+ * trusted only while the stamp generation matches, so any change of matchers, presets or enabled stats makes all
+ * the stamps outdated. Changes of lores by other plugins are not detected.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianStatStamps
+{
+    private static final String KEY = "ElderGuardianStats";
+    private static final byte VERSION = 1;
+
+    public static Optional<Map<String, List<LoreMatchResult>>> read(ItemStack stack, long stampGeneration)
+    {
+        Optional<byte[]> stamp = SpongeUnimplemented.getItemByteArray(stack, KEY);
+        return stamp.isPresent() ? decode(stamp.get(), stampGeneration) : Optional.empty();
+    }
+
+    public static void write(ItemStack stack, long stampGeneration, Map<String, List<LoreMatchResult>> stats)
+    {
+        SpongeUnimplemented.setItemByteArray(stack, KEY, encode(stampGeneration, stats));
+    }
+
+    private static byte[] encode(long stampGeneration, Map<String, List<LoreMatchResult>> stats)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(VERSION);
+            output.writeLong(stampGeneration);
+            output.writeShort(stats.size());
+            for (Map.Entry<String, List<LoreMatchResult>> entry : stats.entrySet())
+            {
+                output.writeUTF(entry.getKey());
+                output.writeShort(entry.getValue().size());
+                for (LoreMatchResult result : entry.getValue())
+                {
+                    Map<String, String> values = new LinkedHashMap<>();
+                    for (Map.Entry<DataQuery, Object> e : result.toContainer().getValues(true).entrySet())
+                    {
+                        if (!(e.getValue() instanceof DataView)) values.put(e.getKey().asString('.'), e.getValue().toString());
+                    }
+                    output.writeShort(values.size());
+                    for (Map.Entry<String, String> e : values.entrySet())
+                    {
+                        output.writeUTF(e.getKey());
+                        output.writeUTF(e.getValue());
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e); // never thrown by byte array streams
+        }
+    }
+
+    private static Optional<Map<String, List<LoreMatchResult>>> decode(byte[] stamp, long stampGeneration)
+    {
+        try
+        {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(stamp));
+            if (input.readByte() != VERSION || input.readLong() != stampGeneration) return Optional.empty();
+            ImmutableMap.Builder<String, List<LoreMatchResult>> builder = ImmutableMap.builder();
+            for (int i = input.readUnsignedShort(); i > 0; --i)
+            {
+                String id = input.readUTF();
+                ImmutableList.Builder<LoreMatchResult> results = ImmutableList.builder();
+                for (int j = input.readUnsignedShort(); j > 0; --j)
+                {
+                    DataContainer container = new MemoryDataContainer();
+                    for (int k = input.readUnsignedShort(); k > 0; --k)
+                    {
+                        container.set(DataQuery.of('.', input.readUTF()), input.readUTF());
+                    }
+                    results.add(LoreMatchResult.fromContainer(container));
+                }
+                builder.put(id, results.build());
+            }
+            return Optional.of(builder.build());
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            return Optional.empty(); // a broken stamp is simply ignored
+        }
+    }
+
+    private ElderGuardianStatStamps()
+    {
+    }
+}
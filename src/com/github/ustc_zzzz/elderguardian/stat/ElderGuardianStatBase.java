@@ -1,19 +1,18 @@
 package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
 import com.github.ustc_zzzz.elderguardian.api.LoreMatcher;
-import com.github.ustc_zzzz.elderguardian.api.LoreMatcherContext;
 import com.github.ustc_zzzz.elderguardian.api.LoreStatEventDriven;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatEventHandler;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianService;
 import com.google.common.collect.ImmutableList;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import org.spongepowered.api.data.DataContainer;
 import org.spongepowered.api.data.MemoryDataContainer;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.entity.projectile.Projectile;
-import org.spongepowered.api.item.inventory.ItemStackSnapshot;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.serializer.TextSerializers;
-import org.spongepowered.api.util.GuavaCollectors;
 
 import javax.annotation.Nonnull;
 import java.util.Collection;
@@ -23,11 +22,13 @@ import java.util.List;
 /**
  * @author ustc_zzzz
  */
-public abstract class ElderGuardianStatBase extends LoreStatEventDriven
+public abstract class ElderGuardianStatBase extends LoreStatEventDriven implements LoreStatEventHandler
 {
     protected final String id;
     protected final ElderGuardianService loreStatService;
 
+    protected int coolDownKeyId = -1; // resolved when enabled
+
     public ElderGuardianStatBase(ElderGuardian plugin, String statID)
     {
         super(plugin);
@@ -39,6 +40,7 @@ public abstract class ElderGuardianStatBase extends LoreStatEventDriven
     public void onLoreStatEnable()
     {
         super.onLoreStatEnable();
+        this.coolDownKeyId = this.loreStatService.getCoolDownHelper().getKeyId(this.id);
         if (!this.loreStatService.getLoreMatchers(this).isEmpty()) return;
 
         for (String template : this.getDefaultTemplates())
@@ -48,29 +50,30 @@ public abstract class ElderGuardianStatBase extends LoreStatEventDriven
         }
     }
 
-    protected List<DataContainer> getStatsInHand(Player player, ItemStackSnapshot snapshot)
+    /**
+     * Load the settings of this stat, which is called before the stat is enabled. Nothing is loaded by default.
+     *
+     * @param node the config node of this stat
+     */
+    public void loadConfig(CommentedConfigurationNode node)
     {
-        DataContainer presets = this.loreStatService.getLoreStatPresetsContainer(this.id);
-        List<LoreMatcher> matchers = this.loreStatService.getLoreMatchers(this.id);
-        LoreMatcherContext c = this.loreStatService.getContextBy(player, snapshot);
-        List<Text> l = c.getHeldItemLore();
-
-        return matchers.stream().flatMap(m -> m.match(l, c, presets).stream()).collect(GuavaCollectors.toImmutableList());
+        // nothing by default
     }
 
-    protected List<DataContainer> getStatsInHand(Player player)
+    /**
+     * Save the settings of this stat. Nothing is saved by default.
+     *
+     * @param node the config node of this stat
+     */
+    public void saveConfig(CommentedConfigurationNode node)
     {
-        return this.loreStatService.matchLoreByHeldItem(this, this.loreStatService.getContextBy(player));
+        // nothing by default
     }
 
-    protected List<DataContainer> getStatsInHand(Projectile projectile)
+    protected List<LoreMatchResult> getStatsInHand(Player player)
     {
-        DataContainer presets = this.loreStatService.getLoreStatPresetsContainer(this.id);
-        List<LoreMatcher> matchers = this.loreStatService.getLoreMatchers(this.id);
-        LoreMatcherContext c = this.loreStatService.getContextBy(projectile);
-        List<Text> l = c.getHeldItemLore();
-
-        return matchers.stream().flatMap(m -> m.match(l, c, presets).stream()).collect(GuavaCollectors.toImmutableList());
+        if (!this.loreStatService.mayHaveHeldItemStat(player, this.id)) return ImmutableList.of();
+        return this.loreStatService.getHeldItemStats(player).getOrDefault(this.id, ImmutableList.of());
     }
 
     protected Collection<String> getDefaultTemplates()
@@ -1,19 +1,16 @@
 package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianCoolDownHelper;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.data.manipulator.mutable.PotionEffectData;
 import org.spongepowered.api.effect.potion.PotionEffect;
 import org.spongepowered.api.effect.sound.SoundTypes;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.Living;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.event.Listener;
-import org.spongepowered.api.event.filter.cause.First;
 import org.spongepowered.api.event.item.inventory.InteractItemEvent;
 import org.spongepowered.api.util.AABB;
 import org.spongepowered.api.world.World;
@@ -29,6 +26,11 @@ import java.util.function.Predicate;
 @ElderGuardianStat
 public final class StatAOEEffect extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor EFFECT = LoreStatAccessor.of("effect");
+    private static final LoreStatAccessor DURATION = LoreStatAccessor.of("duration");
+    private static final LoreStatAccessor RANGE = LoreStatAccessor.of("range");
+    private static final LoreStatAccessor COOLDOWN = LoreStatAccessor.of("cooldown");
+
     private final ElderGuardianCoolDownHelper coolDownHelper;
 
     public StatAOEEffect(ElderGuardian plugin)
@@ -43,23 +45,22 @@ public final class StatAOEEffect extends ElderGuardianStatBase
         return "elderguardian.aoeEffect.defaultTemplate";
     }
 
-    @Listener
-    public void onUseItemStack(InteractItemEvent.Secondary event, @First Player player)
+    @Override
+    public void onInteractItemSecondary(InteractItemEvent.Secondary event, Player player, List<LoreMatchResult> stats)
     {
         Optional<AABB> aabbOptional = player.getBoundingBox();
         if (!aabbOptional.isPresent()) return;
         AABB aabb = aabbOptional.get();
 
-        List<DataContainer> stats = this.getStatsInHand(player);
         int coolDown = stats.stream().mapToInt(this::getCoolDown).reduce(0, Math::max);
-        if (this.coolDownHelper.isInCoolDown(this.id, player)) return;
-        this.coolDownHelper.setCoolDown(this.id, coolDown, player);
+        if (this.coolDownHelper.isInCoolDown(this.coolDownKeyId, player)) return;
+        this.coolDownHelper.setCoolDown(this.coolDownKeyId, coolDown, player);
 
-        for (DataContainer stat : stats)
+        for (LoreMatchResult stat : stats)
         {
-            String effect = stat.getString(DataQuery.of("effect")).orElse("");
-            int duration = stat.getInt(DataQuery.of("duration")).orElse(450);
-            int diameter = stat.getInt(DataQuery.of("range")).orElse(5) * 2;
+            String effect = stat.getString(EFFECT, "");
+            int duration = stat.getInt(DURATION, 450);
+            int diameter = stat.getInt(RANGE, 5) * 2;
 
             Optional<PotionEffect> potionEffectOptional = ElderGuardianHelper.getPotionEffect(effect, duration);
             if (potionEffectOptional.isPresent())
@@ -82,8 +83,8 @@ public final class StatAOEEffect extends ElderGuardianStatBase
         }
     }
 
-    private int getCoolDown(DataView data)
+    private int getCoolDown(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("cooldown")).orElse(0);
+        return data.getInt(COOLDOWN, 0);
     }
 }
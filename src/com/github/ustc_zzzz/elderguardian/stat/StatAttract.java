@@ -3,18 +3,20 @@ package com.github.ustc_zzzz.elderguardian.stat;
 import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.vector.Vector3d;
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
-import org.spongepowered.api.Sponge;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
+import com.github.ustc_zzzz.elderguardian.util.ElderGuardianSpatialHash;
+import com.google.common.collect.ImmutableList;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.Creature;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.scheduler.Task;
-import org.spongepowered.api.util.AABB;
+import org.spongepowered.api.world.World;
 
-import java.util.List;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author ustc_zzzz
@@ -22,8 +24,35 @@ import java.util.Optional;
 @ElderGuardianStat
 public final class StatAttract extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor RADIUS = LoreStatAccessor.of("radius");
+    private static final LoreStatAccessor MAX_SPEED = LoreStatAccessor.of("max-speed");
+
+    private static final int CHUNK_SIZE = 16;
+
+    // each player is processed once every interval-ticks ticks, or less often if players-per-tick is exceeded
+    // the speed is scaled up by the effective interval, but by at most maximum-speed-scale times, and the scaled
+    // speed never moves a creature more than its distance to the player minus one block in a single tick
+    private static final int DEFAULT_INTERVAL_TICKS = 1;
+    private static final int DEFAULT_PLAYERS_PER_TICK = 0; // unlimited
+    private static final double DEFAULT_MAXIMUM_SPEED_SCALE = 4;
+    private static final double DEFAULT_VELOCITY_EPSILON = 0.01;
+    private static final int DEFAULT_VELOCITY_UPDATES_PER_PLAYER = 0; // unlimited
+
+    private final LongAdder sentVelocityUpdates = new LongAdder();
+    private final LongAdder suppressedVelocityUpdates = new LongAdder();
+    private final Map<UUID, Integer> creatureCursors = new HashMap<>(); // player -> first creature updated next time
+    private final Set<UUID> rotation = new LinkedHashSet<>(); // holders in a stable order, new ones are appended
+
     private Optional<Task> task = Optional.empty();
 
+    private int intervalTicks = DEFAULT_INTERVAL_TICKS;
+    private int playersPerTick = DEFAULT_PLAYERS_PER_TICK;
+    private double maximumSpeedScale = DEFAULT_MAXIMUM_SPEED_SCALE;
+    private double velocityEpsilon = DEFAULT_VELOCITY_EPSILON;
+    private int velocityUpdatesPerPlayer = DEFAULT_VELOCITY_UPDATES_PER_PLAYER;
+    @Nullable
+    private UUID lastProcessed = null;
+
     public StatAttract(ElderGuardian plugin)
     {
         super(plugin, "attract");
@@ -35,6 +64,48 @@ public final class StatAttract extends ElderGuardianStatBase
         return "elderguardian.attract.defaultTemplate";
     }
 
+    @Override
+    public void loadConfig(CommentedConfigurationNode node)
+    {
+        this.intervalTicks = Math.max(1, node.getNode("interval-ticks").getInt(DEFAULT_INTERVAL_TICKS));
+        this.playersPerTick = Math.max(0, node.getNode("players-per-tick").getInt(DEFAULT_PLAYERS_PER_TICK));
+        this.maximumSpeedScale = Math.max(1, node.getNode("maximum-speed-scale").getDouble(DEFAULT_MAXIMUM_SPEED_SCALE));
+        this.velocityEpsilon = Math.max(0, node.getNode("velocity-epsilon").getDouble(DEFAULT_VELOCITY_EPSILON));
+        this.velocityUpdatesPerPlayer = Math.max(0, node.getNode("velocity-updates-per-player")
+                .getInt(DEFAULT_VELOCITY_UPDATES_PER_PLAYER));
+    }
+
+    @Override
+    public void saveConfig(CommentedConfigurationNode node)
+    {
+        node.getNode("interval-ticks").setValue(this.intervalTicks);
+        node.getNode("players-per-tick").setValue(this.playersPerTick);
+        node.getNode("maximum-speed-scale").setValue(this.maximumSpeedScale);
+        node.getNode("velocity-epsilon").setValue(this.velocityEpsilon);
+        node.getNode("velocity-updates-per-player").setValue(this.velocityUpdatesPerPlayer);
+    }
+
+    /**
+     * Get how many velocity updates have been sent to creatures since the server started.
+     *
+     * @return the count of sent updates
+     */
+    public long getSentVelocityUpdateCount()
+    {
+        return this.sentVelocityUpdates.sum();
+    }
+
+    /**
+     * Get how many velocity updates have been suppressed since the server started, either because the velocity
+     * was close enough to the current one, or because the player has reached the limit of updates in the tick.
+     *
+     * @return the count of suppressed updates
+     */
+    public long getSuppressedVelocityUpdateCount()
+    {
+        return this.suppressedVelocityUpdates.sum();
+    }
+
     @Override
     public void onLoreStatEnable()
     {
@@ -55,47 +126,130 @@ public final class StatAttract extends ElderGuardianStatBase
             this.task.get().cancel();
             this.task = Optional.empty();
         }
+        this.creatureCursors.clear();
+        this.rotation.clear();
+        this.lastProcessed = null;
     }
 
-    private int getRadius(DataView data)
+    private int getRadius(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("radius")).orElse(0);
+        return data.getInt(RADIUS, 0);
     }
 
-    private double getMaxSpeed(DataView data)
+    private double getMaxSpeed(LoreMatchResult data)
     {
-        return data.getDouble(DataQuery.of("max-speed")).orElse(0.0);
+        return data.getDouble(MAX_SPEED, 0.0);
     }
 
     private void executeTask(Task task)
     {
-        for (Player player : Sponge.getServer().getOnlinePlayers())
+        List<Player> players = this.loreStatService.getActiveHolders(this.id);
+        int size = players.size();
+        if (size == 0) return;
+
+        // players are processed round-robin, one bucket per tick, and the cycle gets longer if the budget is exceeded
+        int count = (size + this.intervalTicks - 1) / this.intervalTicks;
+        if (this.playersPerTick > 0) count = Math.min(count, this.playersPerTick);
+
+        // the effective interval between two ticks processing the same player, which scales the speed up
+        double ticks = Math.min((double) size / count, this.maximumSpeedScale);
+
+        // the rotation is kept in a stable order, so players joining or leaving never shift the others
+        // and the next round starts right after the last processed player even if that player has left
+        Map<UUID, Player> holders = new HashMap<>();
+        for (Player player : players) holders.put(player.getUniqueId(), player);
+        List<Player> order = new ArrayList<>(size);
+        int start = 0;
+        for (Iterator<UUID> iterator = this.rotation.iterator(); iterator.hasNext(); )
         {
-            List<DataContainer> stats = this.getStatsInHand(player);
-            int radius = stats.stream().mapToInt(this::getRadius).reduce(Math::max).orElse(0);
-            double maxSpeed = stats.stream().mapToDouble(this::getMaxSpeed).reduce(Math::min).orElse(0);
-            if (radius <= 0 || maxSpeed <= 0) continue;
+            UUID uuid = iterator.next();
+            Player player = holders.get(uuid);
+            if (Objects.nonNull(player))
+            {
+                order.add(player);
+            }
+            else
+            {
+                iterator.remove();
+                this.creatureCursors.remove(uuid);
+            }
+            if (uuid.equals(this.lastProcessed)) start = order.size();
+        }
+        for (Player player : players)
+        {
+            if (this.rotation.add(player.getUniqueId())) order.add(player);
+        }
+
+        // creatures are indexed per chunk in this tick, so chunks near many players are only scanned once
+        Map<UUID, ElderGuardianSpatialHash<Entity>> creatureIndices = new HashMap<>();
+        for (int i = 0; i < count; ++i)
+        {
+            Player player = order.get((start + i) % order.size());
+            World world = player.getWorld();
+            this.attract(player, ticks, creatureIndices.computeIfAbsent(world.getUniqueId(), k -> indexOf(world)));
+            this.lastProcessed = player.getUniqueId();
+        }
+    }
 
-            Optional<AABB> aabbOptional = player.getBoundingBox();
-            if (!aabbOptional.isPresent()) return;
-            AABB aabb = aabbOptional.get();
+    private static ElderGuardianSpatialHash<Entity> indexOf(World world)
+    {
+        return new ElderGuardianSpatialHash<>(CHUNK_SIZE, (chunkX, chunkZ) -> world.getChunk(chunkX, 0, chunkZ)
+                .map(chunk -> chunk.getEntities(e -> e instanceof Creature)).orElse(ImmutableList.of()));
+    }
+
+    private void attract(Player player, double ticks, ElderGuardianSpatialHash<Entity> creatureIndex)
+    {
+        List<LoreMatchResult> stats = this.getStatsInHand(player);
+        int radius = stats.stream().mapToInt(this::getRadius).reduce(Math::max).orElse(0);
+        double maxSpeed = stats.stream().mapToDouble(this::getMaxSpeed).reduce(Math::min).orElse(0);
+        if (radius <= 0 || maxSpeed <= 0) return;
+
+        Vector3d playerPosition = player.getLocation().getPosition();
+        double multiplier = maxSpeed / GenericMath.sqrt(radius - 1);
 
-            Vector3d playerPosition = player.getLocation().getPosition();
-            double multiplier = maxSpeed / GenericMath.sqrt(radius - 1);
-            double diameter = radius * 2;
+        // entities may be still in the chunk they just left, so two more blocks are checked like the world does
+        List<Entity> entities = new ArrayList<>();
+        creatureIndex.forEachWithin(playerPosition.getX(), playerPosition.getZ(), radius + 2, entities::add);
 
-            AABB range = aabb.expand(diameter, diameter, diameter);
-            for (Entity entity : player.getWorld().getIntersectingEntities(range, e -> e instanceof Creature))
+        // every velocity update is a packet sent to the clients nearby, so updates changing nothing are skipped
+        List<Entity> updatedEntities = new ArrayList<>();
+        List<Vector3d> velocities = new ArrayList<>();
+        double epsilonSquared = this.velocityEpsilon * this.velocityEpsilon;
+        for (Entity entity : entities)
+        {
+            Vector3d diffVector = entity.getLocation().getPosition().sub(playerPosition);
+            double distance = GenericMath.sqrt(diffVector.lengthSquared());
+            if (distance >= 1 && distance <= radius)
             {
-                Vector3d diffVector = entity.getLocation().getPosition().sub(playerPosition);
-                double distance = GenericMath.sqrt(diffVector.lengthSquared());
-                if (distance >= 1 && distance <= radius)
+                // the scaled speed never exceeds the distance to the player unless the unscaled one already does
+                double speed = GenericMath.sqrt(distance - 1) * multiplier;
+                double velocityValue = -Math.max(speed, Math.min(speed * ticks, distance - 1));
+                Vector3d velocity = diffVector.normalize().mul(velocityValue);
+                if (velocity.distanceSquared(entity.getVelocity()) <= epsilonSquared)
                 {
-                    double velocityValue = -GenericMath.sqrt(distance - 1) * multiplier;
-                    Vector3d velocity = diffVector.normalize().mul(velocityValue);
-                    entity.setVelocity(velocity);
+                    this.suppressedVelocityUpdates.increment();
+                    continue;
                 }
+                updatedEntities.add(entity);
+                velocities.add(velocity);
             }
         }
+
+        // if the updates are limited, the first creature updated rotates so that the same ones are not always skipped
+        int size = updatedEntities.size(), start = 0, updates = size;
+        if (this.velocityUpdatesPerPlayer > 0 && size > this.velocityUpdatesPerPlayer)
+        {
+            UUID uuid = player.getUniqueId();
+            updates = this.velocityUpdatesPerPlayer;
+            start = this.creatureCursors.getOrDefault(uuid, 0) % size;
+            this.creatureCursors.put(uuid, (start + updates) % size);
+            this.suppressedVelocityUpdates.add(size - updates);
+        }
+        for (int i = 0; i < updates; ++i)
+        {
+            int index = (start + i) % size;
+            updatedEntities.get(index).setVelocity(velocities.get(index));
+        }
+        this.sentVelocityUpdates.add(updates);
     }
 }
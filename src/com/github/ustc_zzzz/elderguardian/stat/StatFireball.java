@@ -2,21 +2,18 @@ package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.flowpowered.math.vector.Vector3d;
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianCoolDownHelper;
 import com.github.ustc_zzzz.elderguardian.unsafe.SpongeUnimplemented;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.effect.sound.SoundTypes;
 import org.spongepowered.api.entity.EntityTypes;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.projectile.explosive.fireball.SmallFireball;
-import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.cause.Cause;
 import org.spongepowered.api.event.cause.entity.spawn.EntitySpawnCause;
 import org.spongepowered.api.event.cause.entity.spawn.SpawnTypes;
-import org.spongepowered.api.event.filter.cause.First;
 import org.spongepowered.api.event.item.inventory.InteractItemEvent;
 import org.spongepowered.api.world.World;
 
@@ -28,6 +25,8 @@ import java.util.List;
 @ElderGuardianStat
 public final class StatFireball extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor COOLDOWN = LoreStatAccessor.of("cooldown");
+
     private final ElderGuardianCoolDownHelper coolDownHelper;
 
     public StatFireball(ElderGuardian plugin)
@@ -42,15 +41,12 @@ public final class StatFireball extends ElderGuardianStatBase
         return "elderguardian.fireball.defaultTemplate";
     }
 
-    @Listener
-    public void onUseItemStack(InteractItemEvent.Primary event, @First Player player)
+    @Override
+    public void onInteractItemPrimary(InteractItemEvent.Primary event, Player player, List<LoreMatchResult> stats)
     {
-        List<DataContainer> stats = this.getStatsInHand(player, event.getItemStack());
-        if (stats.isEmpty()) return;
-
         int coolDown = stats.stream().mapToInt(this::getCoolDown).reduce(0, Math::max);
-        if (this.coolDownHelper.isInCoolDown(this.id, player)) return;
-        this.coolDownHelper.setCoolDown(this.id, coolDown, player);
+        if (this.coolDownHelper.isInCoolDown(this.coolDownKeyId, player)) return;
+        this.coolDownHelper.setCoolDown(this.coolDownKeyId, coolDown, player);
 
         World world = player.getWorld();
         Vector3d position = player.getLocation().getPosition().add(Vector3d.from(0, 1.5, 0));
@@ -68,8 +64,8 @@ public final class StatFireball extends ElderGuardianStatBase
         world.spawnEntity(smallFireball, cause);
     }
 
-    private int getCoolDown(DataView data)
+    private int getCoolDown(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("cooldown")).orElse(0);
+        return data.getInt(COOLDOWN, 0);
     }
 }
@@ -2,21 +2,16 @@ package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.flowpowered.math.GenericMath;
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import org.spongepowered.api.data.key.Keys;
 import org.spongepowered.api.data.value.BoundedValue;
-import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
-import org.spongepowered.api.event.cause.entity.damage.source.EntityDamageSource;
-import org.spongepowered.api.event.cause.entity.damage.source.IndirectEntityDamageSource;
 import org.spongepowered.api.event.entity.AttackEntityEvent;
 import org.spongepowered.api.event.entity.DamageEntityEvent;
-import org.spongepowered.api.event.filter.cause.Named;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -25,24 +20,30 @@ import java.util.Optional;
 @ElderGuardianStat
 public final class StatLifeSteal extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor MAXIMUM = LoreStatAccessor.of("maximum");
+    private static final LoreStatAccessor MODIFIER = LoreStatAccessor.of("modifier");
+    private static final LoreStatAccessor MODIFIER_PERCENT = LoreStatAccessor.of("modifier-percent");
+
     public StatLifeSteal(ElderGuardian plugin)
     {
         super(plugin, "life_steal");
     }
 
+    @Override
+    public Order getEventOrder()
+    {
+        return Order.LAST; // the final damage is read here
+    }
+
     @Override
     protected String getDefaultTemplateStringTranslationKey()
     {
         return "elderguardian.lifeSteal.defaultTemplate";
     }
 
-    @Listener(order = Order.LAST)
-    public void onAttackEntity(AttackEntityEvent event, @Named(AttackEntityEvent.SOURCE) EntityDamageSource src)
+    @Override
+    public void onAttackEntity(AttackEntityEvent event, Player player, List<LoreMatchResult> stats)
     {
-        Entity sourceEntity = src.getSource();
-        if (!(sourceEntity instanceof Player)) return;
-
-        Player player = (Player) sourceEntity;
         BoundedValue<Double> health = player.health();
         double playerHealth = health.get(), minHealth = health.getMinValue(), maxHealth = health.getMaxValue();
 
@@ -50,24 +51,17 @@ public final class StatLifeSteal extends ElderGuardianStatBase
         Optional<Double> targetHealth = event.getTargetEntity().get(Keys.HEALTH);
         if (targetHealth.isPresent()) outputDamage = Math.min(outputDamage, targetHealth.get());
 
-        for (DataContainer stat : this.getStatsInHand((Player) sourceEntity))
+        for (LoreMatchResult stat : stats)
         {
             double added = outputDamage * this.getModifier(stat);
-            Optional<Double> upperBound = stat.getDouble(DataQuery.of("maximum"));
-
-            // noinspection OptionalIsPresent
-            playerHealth += (upperBound.isPresent() ? Math.min(added, upperBound.get()) : added);
+            playerHealth += Math.min(added, stat.getDouble(MAXIMUM, Double.POSITIVE_INFINITY));
         }
         player.offer(Keys.HEALTH, GenericMath.clamp(playerHealth, minHealth, maxHealth));
     }
 
-    @Listener(order = Order.LAST)
-    public void onDamageEntity(DamageEntityEvent event, @Named(DamageEntityEvent.SOURCE) IndirectEntityDamageSource src)
+    @Override
+    public void onDamageEntityIndirectly(DamageEntityEvent event, Player player, List<LoreMatchResult> stats)
     {
-        Entity sourceEntity = src.getIndirectSource();
-        if (!(sourceEntity instanceof Player)) return;
-
-        Player player = (Player) sourceEntity;
         BoundedValue<Double> health = player.health();
         double playerHealth = health.get(), minHealth = health.getMinValue(), maxHealth = health.getMaxValue();
 
@@ -75,20 +69,16 @@ public final class StatLifeSteal extends ElderGuardianStatBase
         Optional<Double> targetHealth = event.getTargetEntity().get(Keys.HEALTH);
         if (targetHealth.isPresent()) outputDamage = Math.min(outputDamage, targetHealth.get());
 
-        for (DataContainer stat : this.getStatsInHand((Player) sourceEntity))
+        for (LoreMatchResult stat : stats)
         {
             double added = outputDamage * this.getModifier(stat);
-            Optional<Double> upperBound = stat.getDouble(DataQuery.of("maximum"));
-
-            // noinspection OptionalIsPresent
-            playerHealth += (upperBound.isPresent() ? Math.min(added, upperBound.get()) : added);
+            playerHealth += Math.min(added, stat.getDouble(MAXIMUM, Double.POSITIVE_INFINITY));
         }
         player.offer(Keys.HEALTH, GenericMath.clamp(playerHealth, minHealth, maxHealth));
     }
 
-    private double getModifier(DataView data)
+    private double getModifier(LoreMatchResult data)
     {
-        return data.getDouble(DataQuery.of("modifier"))
-                .orElse(data.getDouble(DataQuery.of("modifier-percent")).orElse(0.0) / 100);
+        return data.getDouble(MODIFIER, data.getDouble(MODIFIER_PERCENT, 0.0) / 100);
     }
 }
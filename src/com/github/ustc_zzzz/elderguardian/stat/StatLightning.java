@@ -2,20 +2,14 @@ package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.flowpowered.math.vector.Vector3d;
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
-import org.spongepowered.api.entity.Entity;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import org.spongepowered.api.entity.EntityTypes;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.projectile.Projectile;
-import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.action.CollideEvent;
 import org.spongepowered.api.event.cause.Cause;
-import org.spongepowered.api.event.cause.entity.damage.source.EntityDamageSource;
 import org.spongepowered.api.event.entity.DamageEntityEvent;
-import org.spongepowered.api.event.filter.cause.Named;
-import org.spongepowered.api.event.filter.cause.Root;
 import org.spongepowered.api.world.World;
 
 import java.util.List;
@@ -27,6 +21,8 @@ import java.util.Random;
 @ElderGuardianStat
 public final class StatLightning extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor POSSIBILITY = LoreStatAccessor.of("possibility");
+
     private final Cause cause;
     private final Random random = new Random();
 
@@ -42,27 +38,22 @@ public final class StatLightning extends ElderGuardianStatBase
         return "elderguardian.lightning.defaultTemplate";
     }
 
-    @Listener
-    public void onDamageEntity(DamageEntityEvent event, @Named(DamageEntityEvent.SOURCE) EntityDamageSource source)
+    @Override
+    public void onDamageEntity(DamageEntityEvent event, Player player, List<LoreMatchResult> stats)
     {
-        Entity sourceEntity = source.getSource();
-        if (!(sourceEntity instanceof Player)) return;
-
-        List<DataContainer> stats = this.getStatsInHand((Player) sourceEntity);
         int possibility = stats.stream().mapToInt(this::getPossibility).reduce(Math::min).orElse(0);
 
         if (possibility > 0 && this.random.nextInt(possibility) == 0)
         {
-            World world = sourceEntity.getWorld();
+            World world = player.getWorld();
             Vector3d position = event.getTargetEntity().getLocation().getPosition();
             world.spawnEntity(world.createEntity(EntityTypes.LIGHTNING, position), this.cause);
         }
     }
 
-    @Listener
-    public void onCollideImpact(CollideEvent.Impact event, @Root Projectile projectile)
+    @Override
+    public void onCollideImpact(CollideEvent.Impact event, Projectile projectile, List<LoreMatchResult> stats)
     {
-        List<DataContainer> stats = this.getStatsInHand(projectile);
         int possibility = stats.stream().mapToInt(this::getPossibility).reduce(Math::min).orElse(0);
 
         if (possibility > 0 && this.random.nextInt(possibility) == 0)
@@ -73,8 +64,8 @@ public final class StatLightning extends ElderGuardianStatBase
         }
     }
 
-    private int getPossibility(DataView data)
+    private int getPossibility(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("possibility")).orElse(1);
+        return data.getInt(POSSIBILITY, 1);
     }
 }
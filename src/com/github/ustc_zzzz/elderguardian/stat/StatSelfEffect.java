@@ -1,16 +1,13 @@
 package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianCoolDownHelper;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.data.manipulator.mutable.PotionEffectData;
 import org.spongepowered.api.effect.potion.PotionEffect;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.event.Listener;
-import org.spongepowered.api.event.filter.cause.First;
 import org.spongepowered.api.event.item.inventory.InteractItemEvent;
 
 import java.util.List;
@@ -22,6 +19,10 @@ import java.util.Optional;
 @ElderGuardianStat
 public final class StatSelfEffect extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor EFFECT = LoreStatAccessor.of("effect");
+    private static final LoreStatAccessor DURATION = LoreStatAccessor.of("duration");
+    private static final LoreStatAccessor COOLDOWN = LoreStatAccessor.of("cooldown");
+
     private final ElderGuardianCoolDownHelper coolDownHelper;
 
     public StatSelfEffect(ElderGuardian plugin)
@@ -36,18 +37,17 @@ public final class StatSelfEffect extends ElderGuardianStatBase
         return "elderguardian.selfEffect.defaultTemplate";
     }
 
-    @Listener
-    public void onUseItemStack(InteractItemEvent.Secondary event, @First Player player)
+    @Override
+    public void onInteractItemSecondary(InteractItemEvent.Secondary event, Player player, List<LoreMatchResult> stats)
     {
-        List<DataContainer> stats = this.getStatsInHand(player);
         int coolDown = stats.stream().mapToInt(this::getCoolDown).reduce(0, Math::max);
-        if (this.coolDownHelper.isInCoolDown(this.id, player)) return;
-        this.coolDownHelper.setCoolDown(this.id, coolDown, player);
+        if (this.coolDownHelper.isInCoolDown(this.coolDownKeyId, player)) return;
+        this.coolDownHelper.setCoolDown(this.coolDownKeyId, coolDown, player);
 
-        for (DataContainer stat : stats)
+        for (LoreMatchResult stat : stats)
         {
-            String effect = stat.getString(DataQuery.of("effect")).orElse("");
-            int duration = stat.getInt(DataQuery.of("duration")).orElse(450);
+            String effect = stat.getString(EFFECT, "");
+            int duration = stat.getInt(DURATION, 450);
 
             Optional<PotionEffect> potionEffectOptional = ElderGuardianHelper.getPotionEffect(effect, duration);
             potionEffectOptional.ifPresent(potionEffect -> this.giveEffect(player, potionEffect));
@@ -59,8 +59,8 @@ public final class StatSelfEffect extends ElderGuardianStatBase
         player.getOrCreate(PotionEffectData.class).ifPresent(data -> player.offer(data.addElement(effect)));
     }
 
-    private int getCoolDown(DataView data)
+    private int getCoolDown(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("cooldown")).orElse(0);
+        return data.getInt(COOLDOWN, 0);
     }
 }
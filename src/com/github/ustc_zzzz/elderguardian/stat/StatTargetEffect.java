@@ -1,21 +1,16 @@
 package com.github.ustc_zzzz.elderguardian.stat;
 
 import com.github.ustc_zzzz.elderguardian.ElderGuardian;
+import com.github.ustc_zzzz.elderguardian.api.LoreMatchResult;
+import com.github.ustc_zzzz.elderguardian.api.LoreStatAccessor;
 import com.github.ustc_zzzz.elderguardian.service.ElderGuardianCoolDownHelper;
 import com.github.ustc_zzzz.elderguardian.util.ElderGuardianHelper;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
-import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.data.manipulator.mutable.PotionEffectData;
 import org.spongepowered.api.effect.potion.PotionEffect;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.event.Listener;
-import org.spongepowered.api.event.cause.entity.damage.source.EntityDamageSource;
-import org.spongepowered.api.event.cause.entity.damage.source.IndirectEntityDamageSource;
 import org.spongepowered.api.event.entity.AttackEntityEvent;
 import org.spongepowered.api.event.entity.DamageEntityEvent;
-import org.spongepowered.api.event.filter.cause.Named;
 
 import java.util.List;
 import java.util.Optional;
@@ -26,6 +21,10 @@ import java.util.Optional;
 @ElderGuardianStat
 public final class StatTargetEffect extends ElderGuardianStatBase
 {
+    private static final LoreStatAccessor EFFECT = LoreStatAccessor.of("effect");
+    private static final LoreStatAccessor DURATION = LoreStatAccessor.of("duration");
+    private static final LoreStatAccessor COOLDOWN = LoreStatAccessor.of("cooldown");
+
     private final ElderGuardianCoolDownHelper coolDownHelper;
 
     public StatTargetEffect(ElderGuardian plugin)
@@ -40,33 +39,28 @@ public final class StatTargetEffect extends ElderGuardianStatBase
         return "elderguardian.targetEffect.defaultTemplate";
     }
 
-    @Listener
-    public void onAttackEntity(AttackEntityEvent event, @Named(AttackEntityEvent.SOURCE) EntityDamageSource ds)
+    @Override
+    public void onAttackEntity(AttackEntityEvent event, Player player, List<LoreMatchResult> stats)
     {
-        Entity sourceEntity = ds.getSource();
-        if (!(sourceEntity instanceof Player)) return;
-        this.giveTargetEffect(event.getTargetEntity(), (Player) sourceEntity);
+        this.giveTargetEffect(event.getTargetEntity(), player, stats);
     }
 
-    @Listener
-    public void onDamageEntity(DamageEntityEvent event, @Named(DamageEntityEvent.SOURCE) IndirectEntityDamageSource ds)
+    @Override
+    public void onDamageEntityIndirectly(DamageEntityEvent event, Player player, List<LoreMatchResult> stats)
     {
-        Entity sourceEntity = ds.getIndirectSource();
-        if (!(sourceEntity instanceof Player)) return;
-        this.giveTargetEffect(event.getTargetEntity(), (Player) sourceEntity);
+        this.giveTargetEffect(event.getTargetEntity(), player, stats);
     }
 
-    private void giveTargetEffect(Entity target, Player player)
+    private void giveTargetEffect(Entity target, Player player, List<LoreMatchResult> stats)
     {
-        List<DataContainer> stats = this.getStatsInHand(player);
         int coolDown = stats.stream().mapToInt(this::getCoolDown).reduce(0, Math::max);
-        if (this.coolDownHelper.isInCoolDown(this.id, player)) return;
-        this.coolDownHelper.setCoolDown(this.id, coolDown, player);
+        if (this.coolDownHelper.isInCoolDown(this.coolDownKeyId, player)) return;
+        this.coolDownHelper.setCoolDown(this.coolDownKeyId, coolDown, player);
 
-        for (DataContainer stat : stats)
+        for (LoreMatchResult stat : stats)
         {
-            String effect = stat.getString(DataQuery.of("effect")).orElse("");
-            int duration = stat.getInt(DataQuery.of("duration")).orElse(450);
+            String effect = stat.getString(EFFECT, "");
+            int duration = stat.getInt(DURATION, 450);
 
             Optional<PotionEffect> potionEffectOptional = ElderGuardianHelper.getPotionEffect(effect, duration);
             potionEffectOptional.ifPresent(potionEffect -> this.giveEffect(target, potionEffect));
@@ -78,8 +72,8 @@ public final class StatTargetEffect extends ElderGuardianStatBase
         target.getOrCreate(PotionEffectData.class).ifPresent(data -> target.offer(data.addElement(effect)));
     }
 
-    private int getCoolDown(DataView data)
+    private int getCoolDown(LoreMatchResult data)
     {
-        return data.getInt(DataQuery.of("cooldown")).orElse(0);
+        return data.getInt(COOLDOWN, 0);
     }
 }
@@ -3,8 +3,12 @@ package com.github.ustc_zzzz.elderguardian.unsafe;
 import com.flowpowered.math.vector.Vector3d;
 import com.google.common.base.Throwables;
 import org.spongepowered.api.entity.projectile.explosive.fireball.Fireball;
+import org.spongepowered.api.item.inventory.ItemStack;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * @author ustc_zzzz
@@ -30,6 +34,40 @@ public class SpongeUnimplemented
         }
     }
 
+    public static Optional<byte[]> getItemByteArray(ItemStack stack, String key)
+    {
+        try
+        {
+            Object tag = ItemTags.GET_TAG_COMPOUND_METHOD.invoke(stack);
+            if (Objects.isNull(tag) || !(boolean) ItemTags.HAS_KEY_METHOD.invoke(tag, key, ItemTags.NBT_BYTE_ARRAY_ID))
+            {
+                return Optional.empty();
+            }
+            return Optional.of((byte[]) ItemTags.GET_BYTE_ARRAY_METHOD.invoke(tag, key));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    public static void setItemByteArray(ItemStack stack, String key, byte[] value)
+    {
+        try
+        {
+            Object tag = ItemTags.GET_TAG_COMPOUND_METHOD.invoke(stack);
+            if (Objects.isNull(tag))
+            {
+                ItemTags.SET_TAG_COMPOUND_METHOD.invoke(stack, tag = ItemTags.NBT_TAG_COMPOUND_CLASS.newInstance());
+            }
+            ItemTags.SET_BYTE_ARRAY_METHOD.invoke(tag, key, value);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
     static
     {
         try
@@ -51,4 +89,44 @@ public class SpongeUnimplemented
     private SpongeUnimplemented()
     {
     }
+
+    // loaded on first use, so the reflection of item tags only runs when stamps are enabled
+    private static final class ItemTags
+    {
+        private static final int NBT_BYTE_ARRAY_ID = 7;
+        private static final Class<?> ITEM_STACK_CLASS;
+        private static final Class<?> NBT_TAG_COMPOUND_CLASS;
+        private static final Method GET_TAG_COMPOUND_METHOD;
+        private static final Method SET_TAG_COMPOUND_METHOD;
+        private static final Method HAS_KEY_METHOD;
+        private static final Method GET_BYTE_ARRAY_METHOD;
+        private static final Method SET_BYTE_ARRAY_METHOD;
+
+        static
+        {
+            try
+            {
+                ITEM_STACK_CLASS = Class.forName("net.minecraft.item.ItemStack");
+                NBT_TAG_COMPOUND_CLASS = Class.forName("net.minecraft.nbt.NBTTagCompound");
+                // noinspection JavaReflectionMemberAccess
+                GET_TAG_COMPOUND_METHOD = ITEM_STACK_CLASS.getMethod("func_77978_p");
+                // noinspection JavaReflectionMemberAccess
+                SET_TAG_COMPOUND_METHOD = ITEM_STACK_CLASS.getMethod("func_77982_d", NBT_TAG_COMPOUND_CLASS);
+                // noinspection JavaReflectionMemberAccess
+                HAS_KEY_METHOD = NBT_TAG_COMPOUND_CLASS.getMethod("func_150297_b", String.class, int.class);
+                // noinspection JavaReflectionMemberAccess
+                GET_BYTE_ARRAY_METHOD = NBT_TAG_COMPOUND_CLASS.getMethod("func_74770_j", String.class);
+                // noinspection JavaReflectionMemberAccess
+                SET_BYTE_ARRAY_METHOD = NBT_TAG_COMPOUND_CLASS.getMethod("func_74773_a", String.class, byte[].class);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        private ItemTags()
+        {
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.github.ustc_zzzz.elderguardian.util;
 
 import com.flowpowered.math.TrigMath;
 import com.flowpowered.math.vector.Vector3d;
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import ninja.leaping.configurate.gson.GsonConfigurationLoader;
 import ninja.leaping.configurate.loader.HeaderMode;
@@ -12,9 +13,12 @@ import org.spongepowered.api.effect.potion.PotionEffect;
 import org.spongepowered.api.effect.potion.PotionEffectType;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.item.inventory.ItemStack;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
 import org.spongepowered.api.util.Coerce;
 
 import java.io.*;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -42,6 +46,20 @@ public class ElderGuardianHelper
         return potionType.map(type -> PotionEffect.of(type, amplifier, duration));
     }
 
+    public static List<String> serializeLore(List<Text> lore)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (Text line : lore) builder.add(TextSerializers.FORMATTING_CODE.serialize(line));
+        return builder.build();
+    }
+
+    public static List<String> plainLore(List<Text> lore)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (Text line : lore) builder.add(line.toPlain());
+        return builder.build();
+    }
+
     public static String swapUnderlinesAndDashes(String original)
     {
         // helper method for hocon config files because hocon prefers dashes
@@ -0,0 +1,73 @@
+package com.github.ustc_zzzz.elderguardian.util;
+
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A spatial hash of values in vertical columns, which is filled lazily and shared by many queries, for example by
+ * all the players attracting creatures in the same tick, so that each column is loaded only once.
+ * <p>
+ * Queries return every value in the columns overlapping the square around the center, so callers should check the
+ * exact distance themselves.
+ * </p>
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public final class ElderGuardianSpatialHash<T>
+{
+    private final int cellSize;
+    private final CellLoader<? extends T> loader;
+    private final Map<Long, Collection<? extends T>> cells = new HashMap<>();
+
+    public ElderGuardianSpatialHash(int cellSize, CellLoader<? extends T> loader)
+    {
+        if (cellSize <= 0) throw new IllegalArgumentException("Cell size should be positive");
+        this.cellSize = cellSize;
+        this.loader = loader;
+    }
+
+    public void forEachWithin(double x, double z, double distance, Consumer<? super T> action)
+    {
+        int minX = this.cellOf(x - distance), maxX = this.cellOf(x + distance);
+        int minZ = this.cellOf(z - distance), maxZ = this.cellOf(z + distance);
+        for (int cellX = minX; cellX <= maxX; ++cellX)
+        {
+            for (int cellZ = minZ; cellZ <= maxZ; ++cellZ)
+            {
+                this.getCell(cellX, cellZ).forEach(action);
+            }
+        }
+    }
+
+    private Collection<? extends T> getCell(int cellX, int cellZ)
+    {
+        long key = ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+        Collection<? extends T> values = this.cells.get(key);
+        if (values == null) this.cells.put(key, values = this.loader.load(cellX, cellZ));
+        return values;
+    }
+
+    private int cellOf(double coordinate)
+    {
+        return (int) Math.floor(coordinate / this.cellSize);
+    }
+
+    @FunctionalInterface
+    @NonnullByDefault
+    public interface CellLoader<T>
+    {
+        /**
+         * Load the values in a column, which is called at most once for each column.
+         *
+         * @param cellX the x coordinate of the column, which is the block x coordinate divided by the cell size
+         * @param cellZ the z coordinate of the column, which is the block z coordinate divided by the cell size
+         * @return the values
+         */
+        Collection<? extends T> load(int cellX, int cellZ);
+    }
+}
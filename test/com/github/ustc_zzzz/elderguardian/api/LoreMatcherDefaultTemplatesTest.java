@@ -0,0 +1,103 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongepowered.api.data.MemoryDataContainer;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Tests of the default templates shipped in en_US.properties, which check that lores written in the existing
+ * format still match and are read as the stats expect.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public class LoreMatcherDefaultTemplatesTest
+{
+    private static final String I18N = "/assets/elderguardian/i18n/en_US.properties";
+
+    @Test
+    public void testIntegerValues() throws IOException
+    {
+        assertMatches("arrow", "&6Arrow: 100", "cooldown", 100);
+        assertMatches("fireball", "&cFireball: 30", "cooldown", 30);
+        assertMatches("lightning", "&eLightning: 20", "possibility", 20);
+        assertMatches("attract", "&5Attract: 8 1", "radius", 8);
+    }
+
+    @Test
+    public void testDecimalValues() throws IOException
+    {
+        // decimals in args read as ints used to match and be coerced, which should not be changed
+        assertMatches("lightning", "&eLightning: 2.5", "possibility", 2.5);
+        assertMatches("attract", "&5Attract: 8.5 0.4", "radius", 8.5);
+        assertMatches("attract", "&5Attract: 8.5 0.4", "max-speed", 0.4);
+        assertMatches("arrow", "&6Arrow: 12.5", "cooldown", 12.5);
+        assertMatches("selfEffect", "&bSelfEffect: 1.5 (effect speed, duration 200)", "cooldown", 1.5);
+        assertMatches("aoeEffect", "&aAOE: 20 (range 3.5, effect poison, duration 60)", "range", 3.5);
+    }
+
+    @Test
+    public void testPercentValues() throws IOException
+    {
+        assertMatches("damageIncrease", "&cDamage: +12%", "modifier-percent", 12);
+        assertMatches("damageDecrease", "&9Damage: -7.5%", "modifier-percent", 7.5);
+        assertMatches("damageDecreaseSpecial", "&9DamageSpecial: -5% for fire", "modifier-percent", 5);
+        assertMatches("lifeSteal", "&aLifeSteal: 10% (max 4)", "maximum", 4);
+    }
+
+    @Test
+    public void testStringValues() throws IOException
+    {
+        // values which are not numbers still match, and are only unavailable as numbers
+        LoreMatchResult result = match("lightning", "&eLightning: often");
+        Assert.assertEquals("often", result.getString(LoreStatAccessor.of("possibility"), ""));
+        Assert.assertEquals(-1, result.getInt(LoreStatAccessor.of("possibility"), -1));
+
+        result = match("targetEffect", "TargetEffect: 5 (effect slowness, duration 100)");
+        Assert.assertFalse(result.contains(LoreStatAccessor.of("color"))); // empty args are absent
+        Assert.assertEquals("slowness", result.getString(LoreStatAccessor.of("effect"), ""));
+        Assert.assertEquals(100, result.getInt(LoreStatAccessor.of("duration"), -1));
+    }
+
+    private static void assertMatches(String stat, String line, String arg, double expected) throws IOException
+    {
+        LoreMatchResult result = match(stat, line);
+        Assert.assertEquals(line, expected, result.getDouble(LoreStatAccessor.of(arg), Double.NaN), 1E-9);
+        Assert.assertEquals(line, (int) expected, result.getInt(LoreStatAccessor.of(arg), -1));
+    }
+
+    private static LoreMatchResult match(String stat, String line) throws IOException
+    {
+        String template = defaultTemplateOf(stat);
+        LoreTemplate loreTemplate = LoreTemplate.of(template, LoreMatcher.DEFAULT_OPEN_ARG, LoreMatcher.DEFAULT_CLOSE_ARG);
+        Assert.assertTrue(line, loreTemplate.translate(line, LoreTemplate.Engine.BACKTRACKING).isPresent());
+
+        List<String> templates = ImmutableList.of(template);
+        LoreMatcher matcher = LoreMatcher.fromContainer(new MemoryDataContainer().set(LoreMatcher.TEMPLATES, templates));
+        List<LoreMatchResult> results = matcher.matchSerialized(ImmutableList.of(line), LoreMatcherContext.EMPTY,
+                LoreMatchPresets.EMPTY);
+        Assert.assertEquals(line, 1, results.size());
+        return results.get(0);
+    }
+
+    private static String defaultTemplateOf(String stat) throws IOException
+    {
+        Properties properties = new Properties();
+        try (InputStream stream = LoreMatcherDefaultTemplatesTest.class.getResourceAsStream(I18N))
+        {
+            properties.load(stream);
+        }
+        String template = properties.getProperty("elderguardian." + stat + ".defaultTemplate");
+        Assert.assertNotNull(stat, template);
+        // the templates are escaped for message formats
+        return new MessageFormat(template).format(new Object[0]);
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.ustc_zzzz.elderguardian.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.util.annotation.NonnullByDefault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Differential tests of the engines of {@link LoreTemplate}, which check that the compiled engine captures the same
+ * args as the backtracking one. The backtracking engine knows nothing about arg types, so templates with typed args
+ * are checked against a reference built on {@link Pattern} instead.
+ *
+ * @author ustc_zzzz
+ */
+@NonnullByDefault
+public class LoreTemplateEngineTest
+{
+    private static final String I18N = "/assets/elderguardian/i18n/en_US.properties";
+    private static final String INT_SUFFIX = ":int";
+    private static final String DOUBLE_SUFFIX = ":double";
+
+    private static final String[] SAMPLE_ARGS = {"", "1", "12", "-3", "+4", "5.", ".6", "7.8", "9.0.1", "-", "a", "\u00a7c",
+            "1 2", "3a"};
+
+    @Test
+    public void testDefaultTemplates() throws IOException
+    {
+        List<LoreTemplate> templates = new ArrayList<>();
+        Properties properties = new Properties();
+        try (InputStream stream = LoreTemplateEngineTest.class.getResourceAsStream(I18N))
+        {
+            properties.load(stream);
+        }
+        for (String key : properties.stringPropertyNames())
+        {
+            if (!key.endsWith(".defaultTemplate")) continue;
+            // the templates are escaped for message formats
+            String template = new MessageFormat(properties.getProperty(key)).format(new Object[0]);
+            templates.add(LoreTemplate.of(template, "{{", "}}"));
+        }
+        Assert.assertFalse("There should be default templates", templates.isEmpty());
+
+        Random random = new Random(1);
+        for (LoreTemplate template : templates)
+        {
+            for (int i = 0; i < 2000; ++i)
+            {
+                assertSameCaptures(template, lineOf(template, random));
+            }
+        }
+    }
+
+    @Test
+    public void testAdjacentArgs()
+    {
+        String[] templates = {"{{a}}{{b}}", "{{a}}{{a}}", "{{a:int}}{{b}}", "{{a}}{{b:int}}", "{{a:int}}{{b:int}}",
+                "{{a:double}}{{b:int}}", "x{{a:int}}{{b:double}}y", "{{a}}{{b}}{{c}}:", ":{{a:int}}{{b}}{{c:int}}"};
+        String[] lines = {"", "1", "12", "1.5", "12.5.6", "-1-2", "+1.2+3", "ab", "1a", "a1", "x12.5y", "x1y", ":",
+                ":1:", ":12a3:", "1:2:3", ":+1-2.3", "1.2.3.4.5:"};
+        for (String template : templates)
+        {
+            for (String line : lines)
+            {
+                assertSameCaptures(LoreTemplate.of(template, "{{", "}}"), line);
+            }
+        }
+    }
+
+    @Test
+    public void testTypedArgs()
+    {
+        String[] templates = {"{{a:int}}", "{{a:double}}", "[{{a:int}}]", "[{{a:double}}]", "{{a:int}}.{{b:int}}",
+                "{{a:double}}.{{b}}", "{{a:int}} {{a:double}}", "{{a:string}}", "{{a:int:int}}"};
+        String[] lines = {"", "0", "-0", "+", "-", "1.", ".1", "1.1", "1..1", "1e5", "[1]", "[-2.5]", "[.]", "[1][2]",
+                "1.2", "1.2.3", "1 2", "1.5 2.5", "a 1", "a:int", "7"};
+        for (String template : templates)
+        {
+            for (String line : lines)
+            {
+                assertSameCaptures(LoreTemplate.of(template, "{{", "}}"), line);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomTemplates()
+    {
+        Random random = new Random(7);
+        String alphabet = "a1.-: ";
+        String[] types = {"", "", ":int", ":double"};
+        for (int i = 0; i < 50000; ++i)
+        {
+            StringBuilder builder = new StringBuilder();
+            int argCount = random.nextInt(4);
+            for (int j = 0; j <= argCount; ++j)
+            {
+                builder.append(randomString(random, alphabet, random.nextInt(3)));
+                if (j == argCount) break;
+                String name = random.nextBoolean() ? "x" : "y";
+                builder.append("{{").append(name).append(types[random.nextInt(types.length)]).append("}}");
+            }
+            LoreTemplate template = LoreTemplate.of(builder.toString(), "{{", "}}");
+            for (int j = 0; j < 8; ++j)
+            {
+                String line = random.nextBoolean() ? lineOf(template, random) : "";
+                assertSameCaptures(template, line + randomString(random, alphabet, random.nextInt(4)));
+                assertSameCaptures(template, randomString(random, alphabet, random.nextInt(10)));
+            }
+        }
+    }
+
+    // fill the args of the template with samples, so that most of the lines are near misses or matches
+    private static String lineOf(LoreTemplate template, Random random)
+    {
+        List<String> literals = template.getTemplateLiterals();
+        StringBuilder builder = new StringBuilder(literals.get(0));
+        for (int i = 1; i < literals.size(); ++i)
+        {
+            builder.append(SAMPLE_ARGS[random.nextInt(SAMPLE_ARGS.length)]).append(literals.get(i));
+        }
+        return builder.toString();
+    }
+
+    private static String randomString(Random random, String alphabet, int length)
+    {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return builder.toString();
+    }
+
+    private static void assertSameCaptures(LoreTemplate template, String line)
+    {
+        String message = "Template \"" + template + "\" and line \"" + line + "\"";
+        Optional<Map<String, Object>> expected = referenceCapturesOf(template.toString(), line);
+        if (!isTyped(template.toString()))
+        {
+            // the reference should agree with the backtracking engine on templates without typed args
+            Optional<DataContainer> legacy = template.translate(line, LoreTemplate.Engine.BACKTRACKING);
+            expected = legacy.map(LoreTemplateEngineTest::capturesOf);
+            Assert.assertEquals(message, expected, referenceCapturesOf(template.toString(), line));
+        }
+        Optional<DataContainer> actual = template.translate(line, LoreTemplate.Engine.COMPILED);
+        Assert.assertEquals(message, expected, actual.map(LoreTemplateEngineTest::capturesOf));
+    }
+
+    private static boolean isTyped(String template)
+    {
+        return template.contains(INT_SUFFIX + "}}") || template.contains(DOUBLE_SUFFIX + "}}");
+    }
+
+    // args are matched reluctantly from left to right, which is the same order as the backtracking engine tries
+    // and the former arg overrides the latter one which has the same name
+    private static Optional<Map<String, Object>> referenceCapturesOf(String template, String line)
+    {
+        List<String> names = new ArrayList<>();
+        StringBuilder regex = new StringBuilder();
+        int startIndex = 0;
+        while (true)
+        {
+            int openIndex = template.indexOf("{{", startIndex), closeIndex = template.indexOf("}}", startIndex);
+            if (openIndex + 2 > closeIndex || 0 > openIndex) break;
+            regex.append(Pattern.quote(template.substring(startIndex, openIndex)));
+            String arg = template.substring(openIndex + 2, closeIndex);
+            if (arg.endsWith(INT_SUFFIX))
+            {
+                names.add(arg.substring(0, arg.length() - INT_SUFFIX.length()));
+                regex.append("([+-]?[0-9]+?)");
+            }
+            else if (arg.endsWith(DOUBLE_SUFFIX))
+            {
+                names.add(arg.substring(0, arg.length() - DOUBLE_SUFFIX.length()));
+                regex.append("([+-]?(?:[0-9]+?|[0-9]+\\.[0-9]*?|\\.[0-9]+?))");
+            }
+            else
+            {
+                names.add(arg);
+                regex.append("(.*?)");
+            }
+            startIndex = closeIndex + 2;
+        }
+        regex.append(Pattern.quote(template.substring(startIndex)));
+
+        Matcher matcher = Pattern.compile(regex.toString(), Pattern.DOTALL).matcher(line);
+        if (!matcher.matches()) return Optional.empty();
+        Map<String, Object> captures = new TreeMap<>();
+        for (int i = names.size() - 1; i >= 0; --i) captures.put(names.get(i), matcher.group(i + 1));
+        return Optional.of(captures);
+    }
+
+    private static Map<String, Object> capturesOf(DataView data)
+    {
+        Map<String, Object> captures = new TreeMap<>();
+        for (Map.Entry<DataQuery, Object> entry : data.getValues(true).entrySet())
+        {
+            if (!(entry.getValue() instanceof DataView)) captures.put(entry.getKey().asString('.'), entry.getValue());
+        }
+        return captures;
+    }
+}